@@ -0,0 +1,142 @@
+package pacman.controllers;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * How long an anytime search of a controller, such as MCTS, may run for a move. A budget either
+ * <ul>
+ * <li>runs until the time the move is due (the timeDue given to getMove), less a safety margin, or for a default
+ * number of milliseconds when no time is due, or</li>
+ * <li>runs a fixed number of iterations, whatever the time.</li>
+ * </ul>
+ * The safety margin is measured on the searches themselves: it is the cost of the slowest iteration of a search, as
+ * an iteration that starts just before the deadline may run that long past it, plus the time from the end of the
+ * search to returning the move. Both are tracked as maxima that decay slowly, so that the margin follows the
+ * controller and the machine, and keeps covering the rare iterations that take much longer than the others.
+ * <p>
+ * A search calls start(-) when the move is asked for, isRunning(-) before every iteration, iterationDone(-) after
+ * every iteration, stop() once no iteration is running any more and finish() just before returning the move. The
+ * loops of several threads may check the same budget at once, as long as start(-) happened before they began.
+ */
+public final class SearchBudget {
+    private static final long NANOS_PER_MILLI = 1000000;
+    //the margin before anything has been measured, and the least margin there is
+    private static final long INITIAL_COST_NANOS = NANOS_PER_MILLI;
+    private static final long MIN_MARGIN_NANOS = NANOS_PER_MILLI / 2;
+
+    private final long defaultNanos;
+    private final int iterations;
+
+    private long startNanos, deadlineNanos, stopNanos;
+    private long iterationNanos = INITIAL_COST_NANOS, returnNanos = INITIAL_COST_NANOS;
+    //the slowest iteration of the current search, which several threads may record at once
+    private final AtomicLong slowestNanos = new AtomicLong();
+
+    private SearchBudget(long defaultNanos, int iterations) {
+        this.defaultNanos = defaultNanos;
+        this.iterations = iterations;
+    }
+
+    /**
+     * A budget that runs until the move is due, or for the milliseconds given when no time is due.
+     */
+    public static SearchBudget ofMillis(long defaultMillis) {
+        if (defaultMillis <= 0) {
+            throw new IllegalArgumentException("The default time must be positive: " + defaultMillis);
+        }
+
+        return new SearchBudget(defaultMillis * NANOS_PER_MILLI, 0);
+    }
+
+    /**
+     * A budget that runs the number of iterations given in every loop of a search, however long they take.
+     */
+    public static SearchBudget ofIterations(int iterations) {
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("The number of iterations must be positive: " + iterations);
+        }
+
+        return new SearchBudget(0, iterations);
+    }
+
+    /**
+     * Starts the search for a move due at the time given, in the milliseconds of System.currentTimeMillis(), or at
+     * no particular time if it is not positive.
+     */
+    public void start(long timeDue) {
+        startNanos = System.nanoTime();
+        stopNanos = 0;
+        slowestNanos.set(0);
+
+        if (iterations > 0) {
+            deadlineNanos = 0;
+        } else if (timeDue > 0) {
+            long remaining = (timeDue - System.currentTimeMillis()) * NANOS_PER_MILLI;
+            deadlineNanos = startNanos + remaining - getMarginNanos();
+        } else {
+            deadlineNanos = startNanos + defaultNanos;
+        }
+    }
+
+    /**
+     * Whether a loop of the search that has run the iterations given may run another one. The first iteration
+     * always runs, so that a search has something to return however tight the time.
+     */
+    public boolean isRunning(int iterationsDone) {
+        if (iterations > 0) {
+            return iterationsDone < iterations;
+        }
+
+        return iterationsDone == 0 || hasTime();
+    }
+
+    /**
+     * Whether the deadline has not passed yet, which is always the case when the budget runs a number of iterations.
+     */
+    public boolean hasTime() {
+        return iterations > 0 || System.nanoTime() - deadlineNanos < 0;
+    }
+
+    /**
+     * Records that an iteration which started at the System.nanoTime() given is done.
+     */
+    public void iterationDone(long iterationStartNanos) {
+        long cost = System.nanoTime() - iterationStartNanos;
+        slowestNanos.accumulateAndGet(cost, Math::max);
+    }
+
+    /**
+     * Records that the search is over: the cost of an iteration is that of its slowest iteration, or how far it ran
+     * past the deadline, or past its start if the deadline was already gone, if that is more.
+     */
+    public void stop() {
+        stopNanos = System.nanoTime();
+        long overrun = stopNanos - (deadlineNanos - startNanos > 0 ? deadlineNanos : startNanos);
+        long cost = Math.max(overrun, slowestNanos.get());
+
+        if (iterations == 0 && cost > 0) {
+            iterationNanos = track(iterationNanos, cost);
+        }
+    }
+
+    /**
+     * Records that the move is being returned: the time since stop() is the latency of returning the move.
+     */
+    public void finish() {
+        if (stopNanos != 0) {
+            returnNanos = track(returnNanos, System.nanoTime() - stopNanos);
+        }
+    }
+
+    /**
+     * The time kept back from the time a move is due.
+     */
+    public long getMarginNanos() {
+        return Math.max(MIN_MARGIN_NANOS, iterationNanos + returnNanos);
+    }
+
+    //a maximum that follows a larger sample at once and decays by an eighth of the difference to a smaller one
+    private static long track(long estimate, long sample) {
+        return sample >= estimate ? sample : estimate + (sample - estimate) / 8;
+    }
+}
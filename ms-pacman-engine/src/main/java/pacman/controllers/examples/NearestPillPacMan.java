@@ -18,24 +18,9 @@ public class NearestPillPacMan extends PacmanController {
     public MOVE getMove(Game game, long timeDue) {
         int currentNodeIndex = game.getPacmanCurrentNodeIndex();
 
-        //get all active pills
-        int[] activePills = game.getActivePillsIndices();
+        //the closest active pill or power pill
+        int nearest = game.getNearestActivePill(currentNodeIndex, DM.PATH, true);
 
-        //get all active power pills
-        int[] activePowerPills = game.getActivePowerPillsIndices();
-
-        //create a target array that includes all ACTIVE pills and power pills
-        int[] targetNodeIndices = new int[activePills.length + activePowerPills.length];
-
-        for (int i = 0; i < activePills.length; i++) {
-            targetNodeIndices[i] = activePills[i];
-        }
-
-        for (int i = 0; i < activePowerPills.length; i++) {
-            targetNodeIndices[activePills.length + i] = activePowerPills[i];
-        }
-
-        //return the next direction once the closest target has been identified
-        return game.getNextMoveTowardsTarget(game.getPacmanCurrentNodeIndex(), game.getClosestNodeIndexFromNodeIndex(currentNodeIndex, targetNodeIndices, DM.PATH), DM.PATH);
+        return game.getNextMoveTowardsTarget(game.getPacmanCurrentNodeIndex(), nearest, DM.PATH);
     }
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import pacman.controllers.PacmanController;
 import pacman.game.Constants.DM;
 import pacman.game.Game;
 import pacman.game.GameView;
+import pacman.game.IntPathView;
 
 import java.awt.*;
 
@@ -17,6 +18,8 @@ import static pacman.game.Constants.MOVE;
  * Comment/un-comment code below as desired (drawing all visuals would probably be too much).
  */
 public final class NearestPillPacManVS extends PacmanController {
+    //reused for every path drawn, the view does not copy the paths
+    private final IntPathView path = new IntPathView();
 
     /* (non-Javadoc)
      * @see pacman.controllers.Controller#getMove(pacman.game.Game, long)
@@ -61,8 +64,8 @@ public final class NearestPillPacManVS extends PacmanController {
 
         //add the path AND ghost path from Ghost 0 to the first power pill (to illustrate the differences)
         if (game.getGhostLairTime(GHOST.BLINKY) == 0 && activePowerPills.length > 0) {
-            GameView.addPoints(game, Color.RED, game.getAStarPath(game.getGhostCurrentNodeIndex(GHOST.BLINKY), activePowerPills[0], MOVE.NEUTRAL));
-            GameView.addPoints(game, Color.YELLOW, game.getAStarPath(game.getGhostCurrentNodeIndex(GHOST.BLINKY), activePowerPills[0], game.getGhostLastMoveMade(GHOST.BLINKY)));
+            GameView.addPoints(game, Color.RED, game.getShortestPath(game.getGhostCurrentNodeIndex(GHOST.BLINKY), activePowerPills[0], MOVE.NEUTRAL, path));
+            GameView.addPoints(game, Color.YELLOW, game.getShortestPath(game.getGhostCurrentNodeIndex(GHOST.BLINKY), activePowerPills[0], game.getGhostLastMoveMade(GHOST.BLINKY), path));
         }
 
         //add the path from Ghost 0 to the closest power pill
@@ -31,4 +31,22 @@ public final class RandomGhosts extends Controller<EnumMap<GHOST, MOVE>> {
 
         return moves;
     }
+
+    /**
+     * Same as getMove() but returns the moves packed for Game.advanceGame(int, int), so that no map is needed.
+     *
+     * @param game A copy of the current game
+     * @return The packed moves of the ghosts
+     */
+    public int getPackedMove(Game game) {
+        int packedMoves = Game.NO_GHOST_MOVES;
+
+        for (GHOST ghostType : GHOST.values()) {
+            if (game.doesGhostRequireAction(ghostType)) {
+                packedMoves = Game.packGhostMove(packedMoves, ghostType, allMoves[rnd.nextInt(allMoves.length)]);
+            }
+        }
+
+        return packedMoves;
+    }
 }
\ No newline at end of file
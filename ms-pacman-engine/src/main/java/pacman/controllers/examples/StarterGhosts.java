@@ -21,6 +21,7 @@ public final class StarterGhosts extends Controller<EnumMap<GHOST, MOVE>> {
     private final static float CONSISTENCY = 0.9f;    //attack Ms Pac-Man with this probability
     private final static int PILL_PROXIMITY = 15;        //if Ms Pac-Man is this close to a power pill, back away
     public EnumMap<GHOST, MOVE> myMoves = new EnumMap<GHOST, MOVE>(GHOST.class);
+    private int myPackedMoves = Game.NO_GHOST_MOVES;
 
     Random rnd = new Random();
 
@@ -30,27 +31,50 @@ public final class StarterGhosts extends Controller<EnumMap<GHOST, MOVE>> {
         {
             if (game.doesGhostRequireAction(ghost))        //if ghost requires an action
             {
-                if (game.getGhostEdibleTime(ghost) > 0 || closeToPower(game))    //retreat from Ms Pac-Man if edible or if Ms Pac-Man is close to power pill
-                {
-                    myMoves.put(ghost, game.getApproximateNextMoveAwayFromTarget(game.getGhostCurrentNodeIndex(ghost),
-                            game.getPacmanCurrentNodeIndex(), game.getGhostLastMoveMade(ghost), DM.PATH));
-                } else {
-                    if (rnd.nextFloat() < CONSISTENCY)            //attack Ms Pac-Man otherwise (with certain probability)
-                    {
-                        myMoves.put(ghost, game.getApproximateNextMoveTowardsTarget(game.getGhostCurrentNodeIndex(ghost),
-                                game.getPacmanCurrentNodeIndex(), game.getGhostLastMoveMade(ghost), DM.PATH));
-                    } else                                    //else take a random legal action (to be less predictable)
-                    {
-                        MOVE[] possibleMoves = game.getPossibleMoves(game.getGhostCurrentNodeIndex(ghost), game.getGhostLastMoveMade(ghost));
-                        myMoves.put(ghost, possibleMoves[rnd.nextInt(possibleMoves.length)]);
-                    }
-                }
+                myMoves.put(ghost, getGhostMove(game, ghost));
             }
         }
 
         return myMoves;
     }
 
+    /**
+     * Same as getMove() but returns the moves packed for Game.advanceGame(int, int), so that no map is needed.
+     * Like myMoves, ghosts that do not require an action keep the last move they were given.
+     *
+     * @param game A copy of the current game
+     * @return The packed moves of the ghosts
+     */
+    public int getPackedMove(Game game) {
+        for (GHOST ghost : GHOST.values())    //for each ghost
+        {
+            if (game.doesGhostRequireAction(ghost))        //if ghost requires an action
+            {
+                myPackedMoves = Game.packGhostMove(myPackedMoves, ghost, getGhostMove(game, ghost));
+            }
+        }
+
+        return myPackedMoves;
+    }
+
+    private MOVE getGhostMove(Game game, GHOST ghost) {
+        if (game.getGhostEdibleTime(ghost) > 0 || closeToPower(game))    //retreat from Ms Pac-Man if edible or if Ms Pac-Man is close to power pill
+        {
+            return game.getApproximateNextMoveAwayFromTarget(game.getGhostCurrentNodeIndex(ghost),
+                    game.getPacmanCurrentNodeIndex(), game.getGhostLastMoveMade(ghost), DM.PATH);
+        } else {
+            if (rnd.nextFloat() < CONSISTENCY)            //attack Ms Pac-Man otherwise (with certain probability)
+            {
+                return game.getApproximateNextMoveTowardsTarget(game.getGhostCurrentNodeIndex(ghost),
+                        game.getPacmanCurrentNodeIndex(), game.getGhostLastMoveMade(ghost), DM.PATH);
+            } else                                    //else take a random legal action (to be less predictable)
+            {
+                MOVE[] possibleMoves = game.getPossibleMoves(game.getGhostCurrentNodeIndex(ghost), game.getGhostLastMoveMade(ghost));
+                return possibleMoves[rnd.nextInt(possibleMoves.length)];
+            }
+        }
+    }
+
     //This helper function checks if Ms Pac-Man is close to an available power pill
     private boolean closeToPower(Game game) {
         int[] powerPills = game.getPowerPillIndices();
@@ -3,8 +3,6 @@ package pacman.controllers.examples;
 import pacman.controllers.PacmanController;
 import pacman.game.Game;
 
-import java.util.ArrayList;
-
 import static pacman.game.Constants.*;
 
 /*
@@ -53,34 +51,10 @@ public class StarterPacMan extends PacmanController {
             return game.getNextMoveTowardsTarget(game.getPacmanCurrentNodeIndex(), game.getGhostCurrentNodeIndex(minGhost), DM.PATH);
         }
 
-        //Strategy 3: go after the pills and power pills
-        int[] pills = game.getPillIndices();
-        int[] powerPills = game.getPowerPillIndices();
-
-        ArrayList<Integer> targets = new ArrayList<Integer>();
-
-        for (int i = 0; i < pills.length; i++)                    //check which pills are available
-        {
-            if (game.isPillStillAvailable(i)) {
-                targets.add(pills[i]);
-            }
-        }
-
-        for (int i = 0; i < powerPills.length; i++)            //check with power pills are available
-        {
-            if (game.isPowerPillStillAvailable(i)) {
-                targets.add(powerPills[i]);
-            }
-        }
-
-        int[] targetsArray = new int[targets.size()];        //convert from ArrayList to array
-
-        for (int i = 0; i < targetsArray.length; i++) {
-            targetsArray[i] = targets.get(i);
-        }
+        //Strategy 3: go after the nearest pill or power pill
+        int nearest = game.getNearestActivePill(current, DM.PATH, true);
 
-        //return the next direction once the closest target has been identified
-        return game.getNextMoveTowardsTarget(current, game.getClosestNodeIndexFromNodeIndex(current, targetsArray, DM.PATH), DM.PATH);
+        return game.getNextMoveTowardsTarget(current, nearest, DM.PATH);
     }
 }
 
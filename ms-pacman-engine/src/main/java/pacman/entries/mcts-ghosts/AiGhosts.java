@@ -1,14 +1,14 @@
 package pacman.entries.ghosts;
 
 import pacman.controllers.Controller;
-import pacman.controllers.PacmanController;
-import pacman.controllers.examples.RandomGhosts;
+import pacman.controllers.SearchBudget;
 import pacman.controllers.examples.StarterGhosts;
-import pacman.controllers.examples.StarterPacMan;
 import pacman.game.Constants.*;
 import pacman.game.Game;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class AiGhosts extends Controller<EnumMap<GHOST, MOVE>> {
 
@@ -18,20 +18,122 @@ public class AiGhosts extends Controller<EnumMap<GHOST, MOVE>> {
     /* The moves that will be from using Monte Carlo Tree Search */
     private EnumMap<GHOST, Integer> aiGhosts = new EnumMap<>(GHOST.class);
 
-    /* Variables used to keep track of every simulations score and time */
-    private static List<Integer> scores = new ArrayList<>();
-    private static List<Integer> times = new ArrayList<>();
+    /*
+     * How the searches share the work of a decision:
+     * ROOT: every search grows a tree of its own from the same game, and the children of the roots are merged.
+     * TREE: the searches grow the same tree, steered apart by virtual losses. This needs less memory than
+     * as many trees, and the tree grows deeper in the same time.
+     * PIPELINE: the first search selects and expands the leaves of one tree, and the others play them out (see AiPipeline).
+     */
+    public enum Parallelism {
+        ROOT,
+        TREE,
+        PIPELINE
+    }
+
+    /* The virtual losses added to the nodes a search goes through in a shared tree, or to a leaf in the pipeline */
+    private static final int VIRTUAL_LOSS = 1;
+
+    /*
+     * The searches that share every decision. The first one runs on the thread that asks for the move,
+     * the others on the threads of the pool.
+     */
+    private final AiSearch[] searches;
+    private final Parallelism parallelism;
+
+    /* The history the rewards of every tree are measured against, one per tree, see getTrees(-) */
+    private final AiHistory[] histories;
+
+    /*
+     * The threads of the searches of every AiGhosts. The pool grows to as many threads as are searching at once,
+     * and threads that have been idle for a minute end. A pool with a fixed number of threads, such as the common
+     * fork-join pool, could leave the rollout workers of the pipeline waiting behind other searches.
+     */
+    private static final ExecutorService POOL = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "ai-ghosts-search-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    /* How long the searches of a decision run for, by default until the move is due or for 30ms when no time is due */
+    private SearchBudget budget = SearchBudget.ofMillis(30);
+
+    /* Scratch arrays for the active power pills and their distances, grown to the most power pills a maze has */
+    private int[] powerPillIndexes = new int[4];
+    private int[] powerPillDistances = new int[4];
+
+    /* The trees of the last decision and the moves played from them, or null if there are none to go on from */
+    private List<AiNode> lastTrees;
+    private EnumMap<GHOST, MOVE> lastMoves;
+
+    /* Whether the searches play their rollouts in macro steps, see setMacroRollouts */
+    private boolean macroRollouts = false;
+
+    /* Whether the trees are kept between decisions, see setReuseTrees */
+    private boolean reuseTrees = false;
+
+    /* One search, on the thread that asks for the move */
+    public AiGhosts() {
+        this(1);
+    }
+
+    /* As many searches as given, each on its own thread and growing its own tree */
+    public AiGhosts(int searches) {
+        this(searches, Parallelism.ROOT);
+    }
 
-    /* Minimum score and time from list of simulation scores and times */
-    private static int minimumScore;
-    private static int minimumTime;
+    /* As many searches as given, each on its own thread, sharing the decisions as given */
+    public AiGhosts(int searches, Parallelism parallelism) {
+        if (searches < 1)
+            throw new IllegalArgumentException("At least one search is needed: " + searches);
 
-    /* Exploration Constant and aplha Variable */
-    private static final double c = 1.0f / Math.sqrt(2.0f);
-    private static final double alpha = 0.1;
+        this.parallelism = parallelism;
+        this.searches = new AiSearch[searches];
+        for (int i = 0; i < searches; i++)
+            this.searches[i] = newSearch();
 
-    /* When in Default Policy, StarterPacman() will decide the Pacman agents moves */
-    public static PacmanController pacman = new StarterPacMan();
+        this.histories = new AiHistory[parallelism == Parallelism.ROOT ? searches : 1];
+        for (int i = 0; i < histories.length; i++)
+            this.histories[i] = new AiHistory();
+    }
+
+    /* Set how long the searches of a decision run for */
+    public void setBudget(SearchBudget budget) {
+        this.budget = budget;
+    }
+
+    /*
+     * Keep the trees between decisions. When the ghosts reach the junctions of the child whose moves were played,
+     * that child becomes the root of the next tree, and what was learnt below it carries forward together with the
+     * history its rewards were measured against. Off by default, as the child played is rarely reached.
+     */
+    public void setReuseTrees(boolean reuseTrees) {
+        this.reuseTrees = reuseTrees;
+        if (!reuseTrees)
+            lastTrees = null;
+    }
+
+    /*
+     * Play rollouts in macro steps (see Game.advanceMacro) over a longer horizon. Pacman then only decides at junctions,
+     * and between them the ghosts are moved by the engine rather than by RandomGhosts, which also moves them randomly.
+     */
+    public void setMacroRollouts(boolean macroRollouts) {
+        this.macroRollouts = macroRollouts;
+        for (AiSearch search : searches)
+            search.setMacroRollouts(macroRollouts);
+    }
+
+    /* A search set up as this controller is */
+    private AiSearch newSearch() {
+        AiSearch search = new AiSearch();
+        search.setMacroRollouts(macroRollouts);
+        return search;
+    }
 
     /**
      * Loops through each ghost, checking if it requires a move.
@@ -47,10 +149,6 @@ public class AiGhosts extends Controller<EnumMap<GHOST, MOVE>> {
     public EnumMap<GHOST, MOVE> getMove(Game game, long timeDue) {
         finalMoves.clear();
         aiGhosts.clear();
-        minimumScore = Integer.MAX_VALUE;
-        minimumTime = Integer.MAX_VALUE;
-        scores.clear();
-        times.clear();
 
         EnumMap<GHOST, MOVE> aiMoves = new EnumMap<>(GHOST.class);
         boolean oneGhostInJunction = false;
@@ -81,7 +179,7 @@ public class AiGhosts extends Controller<EnumMap<GHOST, MOVE>> {
 
 
         if (oneGhostInJunction) {
-            aiMoves = mcts(game, aiGhosts);
+            aiMoves = mcts(game, aiGhosts, timeDue);
             for (GHOST ghost : aiGhosts.keySet())
                 finalMoves.put(ghost, aiMoves.get(ghost));
         }
@@ -150,9 +248,16 @@ public class AiGhosts extends Controller<EnumMap<GHOST, MOVE>> {
 
     /* checks if Pacman is close to Power Pill */
     private boolean isPacmanIsCloseToPowerPill(Game state) {
-        int[] powerPillIndexes = state.getActivePowerPillsIndices();
-        for (int i = 0; i < powerPillIndexes.length; i++) {
-            if (state.getDistance(state.getPacmanCurrentNodeIndex(), powerPillIndexes[i], DM.PATH) < 40)
+        int numberOfPowerPills = state.getNumberOfPowerPills();
+        if (powerPillIndexes.length < numberOfPowerPills) {
+            powerPillIndexes = new int[numberOfPowerPills];
+            powerPillDistances = new int[numberOfPowerPills];
+        }
+
+        int count = state.getActivePowerPillsIndices(powerPillIndexes);
+        state.getShortestPathDistances(state.getPacmanCurrentNodeIndex(), powerPillIndexes, count, powerPillDistances);
+        for (int i = 0; i < count; i++) {
+            if (powerPillDistances[i] < 40)
                 return true;
         }
         return false;
@@ -163,216 +268,208 @@ public class AiGhosts extends Controller<EnumMap<GHOST, MOVE>> {
         return game.isJunction(index);
     }
 
-    /* Method used to run MCTS in order to find best moves */
-    public EnumMap<GHOST, MOVE> mcts (Game game, EnumMap<GHOST, Integer> aiGhosts) {
-
-    	/* Create root node based on what Ghosts requirement movement */
-        AiNode root = new AiNode(null, game, aiGhosts);
-        long start = new Date().getTime();
-
-        /** Runs simulations for 30ms as other processes could take 10ms */
-        while (new Date().getTime() < start + 30) {
-
-        	/* Select nodes until leaf, then expand and return new node */
-            AiNode node = treePolicy (root);
-
-            if (node == null) {
-                EnumMap<GHOST, MOVE> finalMoves = new EnumMap<>(GHOST.class);
-                for (GHOST ghost : aiGhosts.keySet()) {
-                    MOVE randomMove = new RandomGhost (ghost, 40).getMove (game, -1);
-                    finalMoves.put(ghost, randomMove);
-                }
-                return finalMoves;
+    /*
+     * Method used to run MCTS in order to find best moves
+     * The searches grow their trees for as long as the budget allows, given the time the move is due
+     * The children of the roots are then merged by their moves, and the moves with the best mean reward are returned
+     */
+    public EnumMap<GHOST, MOVE> mcts (Game game, EnumMap<GHOST, Integer> aiGhosts, long timeDue) {
+        budget.start(timeDue);
+        AiNode[] trees = getTrees(game, aiGhosts);
+        lastTrees = null;
+        List<Callable<AiNode>> tasks = new ArrayList<>();
+        List<AiNode> roots;
+
+        if (parallelism == Parallelism.TREE) {
+            AiNode root = trees[0];
+            AiHistory history = histories[0];
+            for (AiSearch search : searches)
+                tasks.add(() -> search.grow(root, budget, history, VIRTUAL_LOSS) ? root : null);
+
+            roots = getSharedRoot(run(tasks), root);
+        } else if (parallelism == Parallelism.PIPELINE) {
+            AiNode root = trees[0];
+            AiPipeline pipeline = new AiPipeline(root, budget, histories[0], searches.length - 1);
+            tasks.add(() -> pipeline.select(searches[0], VIRTUAL_LOSS) ? root : null);
+            for (int i = 1; i < searches.length; i++) {
+                AiSearch search = searches[i];
+                tasks.add(() -> {
+                    pipeline.rollouts(search);
+                    return null;
+                });
             }
-
-            /* After simulating for a given period, return reward */
-            double reward = defaultPolicy (node);
-
-            /* Travel up visited nodes with reward and increasing number of times visited */
-            backpropagate (node, reward);
+            roots = getSharedRoot(run(tasks), root);
+        } else {
+            for (int i = 0; i < searches.length; i++) {
+                AiSearch search = searches[i];
+                AiNode root = trees[i];
+                AiHistory history = histories[i];
+                tasks.add(() -> search.grow(root, budget, history, 0) ? root : null);
+            }
+            roots = run(tasks);
         }
 
-        /* Select best node without exploration constant */
-        AiNode bestChid = getBestChild (root, 0);
+        budget.stop();
+        EnumMap<GHOST, MOVE> bestMoves = roots == null ? null : getBestMoves(roots);
 
-        if (bestChid == null) {
+        /* Keep the trees of a decision that completed, to go on from the child that is played at the next decision */
+        lastTrees = reuseTrees && bestMoves != null ? roots : null;
+        lastMoves = bestMoves;
+
+        if (bestMoves == null) {
             EnumMap<GHOST, MOVE> finalMoves = new EnumMap<> (GHOST.class);
             for(GHOST ghost : aiGhosts.keySet()) {
                 MOVE randomMove = new RandomGhost (ghost, 40).getMove (game, -1);
                 finalMoves.put(ghost, randomMove);
             }
+            budget.finish();
             return finalMoves;
         }
 
         /* add mcts moves to moves going to be submitted to game */
-        return bestChid.actionMoves;
+        budget.finish();
+        return bestMoves;
     }
 
-    /* 
-     * while node is not fully expanded, select based one based on UCT 
-	 * Once a node is reached that isn't fully expanded, expand
+    /*
+     * Return the roots of the trees to grow, one for every search in ROOT mode and a shared one otherwise
+     * Each tree goes on from the last one if possible, or else starts from scratch
+     * A tree that goes on keeps its history, so that its new rewards are on the scale of those it has; the history of
+     * a new tree is cleared
+     * Copying the game advances its random numbers, so the copies are made here rather than on the searches' threads
      */
-    private AiNode treePolicy(AiNode node) {
-        if (node == null)
-            return null;
+    private AiNode[] getTrees(Game game, EnumMap<GHOST, Integer> aiGhosts) {
+        AiNode[] trees = new AiNode[parallelism == Parallelism.ROOT ? searches.length : 1];
 
-        if (!node.isFullyExpanded()) {
-            return node.expand();
-        } else {
-            return treePolicy(getBestChild(node, c));
+        for (int i = 0; i < trees.length; i++) {
+            Game copy = i == 0 ? game : game.copy();
+            AiNode lastTree = lastTrees == null ? null : lastTrees.get(i);
+            AiNode subtree = getPlayedChild(lastTree, copy, aiGhosts);
+
+            if (subtree != null) {
+                subtree.promote(copy);
+                trees[i] = subtree;
+            } else {
+                histories[i].clear();
+                trees[i] = new AiNode(null, copy, new EnumMap<>(aiGhosts));
+            }
         }
+
+        return trees;
     }
 
-    /* 
-     * Run simulation until any of these things happen:
-     * - Advancement in game passes threshold
-     * - Pacman was eaten
-     * - All pills eaten
-     * - All power pills eaten
-     *
-     * 	Reward based on formula in thesis. 
-     *	Once simulation finished, return reward.
+    /*
+     * Return the child of the last tree that was reached by playing the last moves: it has those moves, and the ghosts
+     * that now need a move are where it has them, in the same level
+     * Those ghosts must also have come in the same way, as the moves tried from the child exclude their reversals
+     * If several children match, return the most visited one
+     * Return null if there is no last tree or no child matches
      */
-    private double defaultPolicy (AiNode node) {
-        int steps = 0;
-        double totalScore = 0;
-        Controller<MOVE> pacmanController = pacman;
-        Controller<EnumMap<GHOST, MOVE>> ghostController = new RandomGhosts();
-
-        if (node == null)
-            return 0;
-
-        Game state = node.game.copy();
-        state.empowerGhostEatScore();
-        int pacmanLivesBefore = state.getPacmanNumberOfLivesRemaining();
-        int numberOfGhostsEaten = 0;
-
-        while (steps <= 20 && !state.wasPacManEaten() && state.getNumberOfActivePills() != state.getNumberOfPills() && state.getNumberOfActivePowerPills() != state.getNumberOfPowerPills()) {
-            state.advanceGame(
-                    pacmanController.getMove(state, System.currentTimeMillis()),
-                    ghostController.getMove(state, System.currentTimeMillis())
-            );
-
-            for (GHOST ghost : node.actionMoves.keySet()) {
-                if (state.wasGhostEaten(ghost))
-                    numberOfGhostsEaten++;
-            }
+    private AiNode getPlayedChild(AiNode lastTree, Game game, EnumMap<GHOST, Integer> aiGhosts) {
+        if (lastTree == null)
+            return null;
 
-            steps++;
+        AiNode playedChild = null;
+        for (AiNode child : lastTree.children) {
+            if (child.actionMoves.equals(lastMoves) && child.junctions.equals(aiGhosts)
+                    && child.game.getCurrentLevel() == game.getCurrentLevel()
+                    && hasSameLastMoves(child.game, game, aiGhosts.keySet())
+                    && (playedChild == null || child.getTimesVisited() > playedChild.getTimesVisited()))
+                playedChild = child;
         }
 
-        totalScore = getRewardScore(state, node, pacmanLivesBefore);
-        return totalScore;
+        return playedChild;
     }
 
-  	/* 
- 	 * Get score and time of game and them to the to the list of scores and times achieved.
- 	 * If Pacman was eaten, multiply score by 100.
- 	 * Also replace minimum score and time if beaten.
-	 *
-	 * Penalty One based on how many ghosts are inside range when non-edible and outside range when edible.
-	 * Penalty Two based on the distance between ghosts being close together.
-	 *
-	 * Return reward after calculation.
-  	 */
-    private static double getRewardScore(Game state, AiNode node, int pacmanLivesBefore) {
-        double scoreSum = 0;
-        double timeSum = 0;
-        double caseOnePenalty = 0;
-        double caseTwoPenalty = 0;
-
-        int pacmanEatenMultiplier = 1;
-        int gameScore = state.getScore();
-        int gameTime = state.getTotalTime();
-
-        scores.add(gameScore);
-        times.add(gameTime);
-
-        if (minimumScore > gameScore)
-            minimumScore = gameScore;
-
-        if (minimumTime > gameTime)
-            minimumTime = gameTime;
-
-        if (pacmanLivesBefore > state.getPacmanNumberOfLivesRemaining())
-            pacmanEatenMultiplier = 100;
-
-
-        /** If ghosts are in the correct range. */
-        int numOfEdibleGhostsInsideRange = 0;
-        int numOfNonEdibleGhostsInsideRange = 0;
-        for (GHOST ghost : node.actionMoves.keySet()) {
-            if (state.isGhostEdible(ghost)) {
-                if (state.getDistance(state.getGhostCurrentNodeIndex(ghost), state.getPacmanCurrentNodeIndex(), DM.PATH) < 40)
-                    numOfEdibleGhostsInsideRange++;
-            } else if (state.getDistance(state.getGhostCurrentNodeIndex(ghost), state.getPacmanCurrentNodeIndex(), DM.PATH) > 40)
-                numOfNonEdibleGhostsInsideRange++;
+    /* Return whether the ghosts given made the same last moves in both games */
+    private static boolean hasSameLastMoves(Game a, Game b, Set<GHOST> ghosts) {
+        for (GHOST ghost : ghosts) {
+            if (a.getGhostLastMoveMade(ghost) != b.getGhostLastMoveMade(ghost))
+                return false;
         }
-        caseOnePenalty = (numOfNonEdibleGhostsInsideRange * 25) + (numOfEdibleGhostsInsideRange * 25);
-
-        /** If ghosts are in close proximity of each other. */
-        caseTwoPenalty = getCaseTwoPenalty(state, node.junctions);
 
-        /** Score Calculator based on game score and game time */
-        for(int i = 0; i < scores.size(); i++) {
-            scoreSum += 1 / (scores.get(i) + caseOnePenalty + caseTwoPenalty);
-            timeSum += 1 / (times.get(i) + caseOnePenalty + caseTwoPenalty);
-        }
-        return ((alpha * minimumScore * scoreSum) + ((1 - alpha) * minimumTime * timeSum)) * pacmanEatenMultiplier;
+        return true;
     }
 
-    /* 
-     * If only one MCTS ghost is being used, return 0.
-     * If distance between MCTS ghosts is within 15 game-units, penalty mulitplier increases.
-     * Return penalty.
+    /*
+     * Add up the visits and rewards of the children of every root that have the same moves
+     * Return the moves with the best mean reward, as AiSearch.getBestChild() does without exploration
+     * Return null if no search got to a child
      */
-    private static int getCaseTwoPenalty(Game game, EnumMap<GHOST, Integer> indexes) {
-        int penaltyMultiplier = 0;
-        if (indexes.keySet().size() == 1)
-            return 0;
-
-        else {
-            for (GHOST ghost : indexes.keySet()) {
-                for (GHOST altGhost : indexes.keySet()) {
-                    if (ghost == altGhost)
-                        continue;
-                    else {
-                        if (game.getDistance(game.getGhostCurrentNodeIndex(ghost), game.getGhostCurrentNodeIndex(altGhost), DM.PATH) < 15)
-                            penaltyMultiplier++;
-                    }
-                }
-            }
+    private static EnumMap<GHOST, MOVE> getBestMoves(List<AiNode> roots) {
+        Map<EnumMap<GHOST, MOVE>, double[]> merged = new LinkedHashMap<>();
 
-            return 100 * penaltyMultiplier;
-        }
-    }
+        for (AiNode root : roots) {
+            if (root == null)
+                continue;
 
-    /* Return best child based on UCT value */
-    private AiNode getBestChild(AiNode node, double c) {
-        AiNode bestChild = null;
+            for (AiNode child : root.children) {
+                double[] totals = merged.computeIfAbsent(child.actionMoves, moves -> new double[2]);
+                totals[0] += child.getTimesVisited();
+                totals[1] += child.getDeltaReward();
+            }
+        }
 
+        EnumMap<GHOST, MOVE> bestMoves = null;
         double bestValue = Double.MIN_VALUE;
-        for (AiNode child : node.children) {
-            if(getUctValue(child, c) >= bestValue) {
-                bestValue = getUctValue(child, c);
-                bestChild = child;
+        for (Map.Entry<EnumMap<GHOST, MOVE>, double[]> entry : merged.entrySet()) {
+            double value = (float) (entry.getValue()[1] / entry.getValue()[0]);
+            if (value >= bestValue) {
+                bestValue = value;
+                bestMoves = entry.getKey();
             }
         }
 
-        return bestChild;
+        return bestMoves;
     }
 
-    /* Return UCT value */
-    private double getUctValue (AiNode child, double c) {
-        return (float) ((child.deltaReward / child.timesVisited) + c * Math.sqrt(2 * Math.log(child.parent.timesVisited) / child.timesVisited));
+    /*
+     * Return the shared root as the only tree if one search got through, or a null tree if none did
+     * Return null if the searches did not complete
+     */
+    private static List<AiNode> getSharedRoot(List<AiNode> results, AiNode root) {
+        if (results == null)
+            return null;
+
+        return results.contains(root) ? Collections.singletonList(root) : Collections.singletonList(null);
     }
 
-    /* Travel up through visited nodes, add score and the amount of times it has been visited */
-    private void backpropagate (AiNode currentNode, double reward) {
-        while (currentNode != null) {
-            currentNode.timesVisited++;
-            currentNode.deltaReward += reward;
-            currentNode = currentNode.parent;
+    /*
+     * Run the task of every search, the first on this thread and the others on the pool, and return their results
+     * Return null if this thread is interrupted before they complete
+     * Tasks still running when this returns early are cancelled, and their searches and the histories replaced by new
+     * ones, as their threads may not have stopped yet
+     */
+    private List<AiNode> run(List<Callable<AiNode>> tasks) {
+        List<Future<AiNode>> futures = new ArrayList<>();
+        List<AiNode> results = new ArrayList<>();
+        boolean completed = false;
+
+        try {
+            for (int i = 1; i < tasks.size(); i++)
+                futures.add(POOL.submit(tasks.get(i)));
+
+            results.add(tasks.get(0).call());
+            for (Future<AiNode> future : futures)
+                results.add(future.get());
+            completed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("MCTS search failed", e.getCause());
+        } catch (Exception e) {
+            throw new IllegalStateException("MCTS search failed", e);
+        } finally {
+            if (!completed) {
+                for (int i = 0; i < futures.size(); i++) {
+                    if (futures.get(i).cancel(true))
+                        searches[i + 1] = newSearch();
+                }
+                for (int i = 0; i < histories.length; i++)
+                    histories[i] = new AiHistory();
+            }
         }
+
+        return completed ? results : null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,94 @@
+package pacman.entries.ghosts;
+
+import java.util.Arrays;
+
+/*
+ * The scores and times reached by the rollouts of one tree, which AiSearch measures the reward of every rollout against.
+ * The searches that grow the same tree share one, so that the rewards backpropagated into the tree are on the same
+ * scale whichever search played them out.
+ * The reward of a rollout sums a term for every rollout so far, given the penalty of the new one. The penalties only
+ * take a few values, so the sums are kept up to date for every penalty seen rather than summed again for every rollout.
+ */
+final class AiHistory {
+
+    private int[] scores = new int[256];
+    private int[] times = new int[256];
+    private int size;
+
+    /* Minimum score and time from the history */
+    private int minimumScore;
+    private int minimumTime;
+
+    /* The penalties seen, and for each the sums over the history of 1 / (score + penalty) and 1 / (time + penalty) */
+    private int[] penalties = new int[8];
+    private double[] scoreSums = new double[8];
+    private double[] timeSums = new double[8];
+    private int numPenalties;
+
+    AiHistory() {
+        clear();
+    }
+
+    /* Forget every rollout, as when a new tree is grown */
+    synchronized void clear() {
+        size = 0;
+        numPenalties = 0;
+        minimumScore = Integer.MAX_VALUE;
+        minimumTime = Integer.MAX_VALUE;
+    }
+
+    /*
+     * Add the score and time of a rollout to the history
+     * Return the reward of the rollout before the multiplier for Pacman being eaten, given its penalty and alpha
+     */
+    synchronized double add(int score, int time, int penalty, double alpha) {
+        if (size == scores.length) {
+            scores = Arrays.copyOf(scores, size * 2);
+            times = Arrays.copyOf(times, size * 2);
+        }
+
+        scores[size] = score;
+        times[size] = time;
+        size++;
+
+        if (minimumScore > score)
+            minimumScore = score;
+
+        if (minimumTime > time)
+            minimumTime = time;
+
+        for (int i = 0; i < numPenalties; i++) {
+            scoreSums[i] += 1.0 / (score + penalties[i]);
+            timeSums[i] += 1.0 / (time + penalties[i]);
+        }
+
+        int index = getPenaltyIndex(penalty);
+        return (alpha * minimumScore * scoreSums[index]) + ((1 - alpha) * minimumTime * timeSums[index]);
+    }
+
+    /* Return where the sums of the penalty are, summing the whole history the first time the penalty is seen */
+    private int getPenaltyIndex(int penalty) {
+        for (int i = 0; i < numPenalties; i++) {
+            if (penalties[i] == penalty)
+                return i;
+        }
+
+        if (numPenalties == penalties.length) {
+            penalties = Arrays.copyOf(penalties, numPenalties * 2);
+            scoreSums = Arrays.copyOf(scoreSums, numPenalties * 2);
+            timeSums = Arrays.copyOf(timeSums, numPenalties * 2);
+        }
+
+        double scoreSum = 0;
+        double timeSum = 0;
+        for (int i = 0; i < size; i++) {
+            scoreSum += 1.0 / (scores[i] + penalty);
+            timeSum += 1.0 / (times[i] + penalty);
+        }
+
+        penalties[numPenalties] = penalty;
+        scoreSums[numPenalties] = scoreSum;
+        timeSums[numPenalties] = timeSum;
+        return numPenalties++;
+    }
+}
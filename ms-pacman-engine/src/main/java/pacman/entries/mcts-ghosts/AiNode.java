@@ -1,12 +1,15 @@
 package pacman.entries.ghosts;
 
-import pacman.controllers.Controller;
-import pacman.controllers.PacmanController;
-import pacman.controllers.examples.StarterGhosts;
 import pacman.game.Constants.*;
+import pacman.game.AgentSelector;
 import pacman.game.Game;
+import pacman.game.StopCondition;
+import pacman.game.TickPolicy;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 public class AiNode {
 
@@ -14,17 +17,31 @@ public class AiNode {
     EnumMap<GHOST, Integer> junctions;
     EnumMap<GHOST, MOVE> actionMoves = new EnumMap<>(GHOST.class);
     
-    int timesVisited = 0;
-    double deltaReward;
+    /*
+     * The statistics of the node, which the threads that share a tree update at once without locking:
+     * the reward is kept as the bits of a double so that it can be added to with a compare-and-set.
+     * Virtual losses are the visits still being played out, counted as visits without a reward so that other
+     * threads prefer different nodes in the meantime.
+     */
+    private volatile int timesVisited;
+    private volatile long deltaRewardBits;
+    private volatile int virtualLosses;
+
+    private static final AtomicIntegerFieldUpdater<AiNode> TIMES_VISITED = AtomicIntegerFieldUpdater.newUpdater(AiNode.class, "timesVisited");
+    private static final AtomicLongFieldUpdater<AiNode> DELTA_REWARD_BITS = AtomicLongFieldUpdater.newUpdater(AiNode.class, "deltaRewardBits");
+    private static final AtomicIntegerFieldUpdater<AiNode> VIRTUAL_LOSSES = AtomicIntegerFieldUpdater.newUpdater(AiNode.class, "virtualLosses");
 
     public AiNode parent;
-    public ArrayList<AiNode> children = new ArrayList<>();
+    /* Children are only added while holding the lock of the node, and can be read at any time */
+    public List<AiNode> children = new CopyOnWriteArrayList<>();
     public Game game;
 
     private AiNode root;
 
     /* Used to keep track of if a node has been fully expanded */
     private EnumMap<GHOST, ArrayList<MOVE>> triedMoves = new EnumMap<>(GHOST.class);
+    /* The moves this node marked as tried in its parent, which the parent can try again if the node is discarded */
+    private EnumMap<GHOST, MOVE> newlyTriedMoves = new EnumMap<>(GHOST.class);
 
     private EnumMap<GHOST, Integer> distanceToJunction = new EnumMap<>(GHOST.class);
 
@@ -38,7 +55,6 @@ public class AiNode {
     AiNode (AiNode parent, Game game, EnumMap<GHOST, Integer> junctions) {
         this.root = getRootNode(parent);
         this.parent = parent;
-        this.deltaReward = 0.0f;
         this.game = game;
         this.junctions = junctions;
 
@@ -49,6 +65,25 @@ public class AiNode {
         }
     }
 
+    /*
+     * Make this node the root of its tree, from the game given instead of the one it was reached in
+     * The rest of the tree is dropped, and the distances of the nodes below are measured from here
+     */
+    void promote(Game game) {
+        this.parent = null;
+        this.game = game;
+        setRoot(this);
+    }
+
+    private void setRoot(AiNode root) {
+        this.root = root;
+        for (GHOST ghost : junctions.keySet())
+            distanceToJunction.put(ghost, getDistance(root, ghost));
+
+        for (AiNode child : children)
+            child.setRoot(root);
+    }
+
     /* Return root node */
     private AiNode getRootNode(AiNode parent) {
         if (parent == null)
@@ -79,15 +114,22 @@ public class AiNode {
      * Move ghosts to follow Path to next Junction
      * Create new node from these Junctions
      * If the node can't expand, return this node
+     * Pacman and the other ghosts are moved by the policy given while following the paths, and the game is reseeded as given
      */
-    public AiNode expand() {
+    public AiNode expand(TickPolicy policy, long seed) {
         if (underDistanceLimit(distanceToJunction)) {
             EnumMap<GHOST, MOVE> nextMoves = new EnumMap<>(GHOST.class);
+            EnumMap<GHOST, MOVE> newlyTried = new EnumMap<>(GHOST.class);
             for (GHOST ghost : junctions.keySet()) {
-                nextMoves.put(ghost, getUntriedMove(game, ghost));
+                int tried = triedMoves.get(ghost).size();
+                MOVE move = getUntriedMove(game, ghost);
+                nextMoves.put(ghost, move);
+                if (triedMoves.get(ghost).size() > tried)
+                    newlyTried.put(ghost, move);
             }
 
-            AiNode child = getClosestJunctionDir(nextMoves);
+            AiNode child = getClosestJunctionDir(nextMoves, policy, seed);
+            child.newlyTriedMoves = newlyTried;
             children.add(child);
             return child;
         }
@@ -98,37 +140,66 @@ public class AiNode {
      * While Ghosts are not in a junction or are not at the starting point, advance game based on following the path
      * Once a junction is reached, create a new node and return the newly created node.
      */
-    private AiNode getClosestJunctionDir (EnumMap<GHOST, MOVE> nextMoves) {
-        Game state = game.copy();
-        PacmanController pacman = AiGhosts.pacman;
-        Controller<EnumMap<GHOST, MOVE>> ghostsController = new StarterGhosts();
-
-        EnumMap<GHOST, Integer> indexesBefore = getGhostIndexes(state);
-        EnumMap<GHOST, Integer> currentIndexes = indexesBefore;
+    private AiNode getClosestJunctionDir (EnumMap<GHOST, MOVE> nextMoves, TickPolicy policy, long seed) {
+        /* Other threads may be reading the game of this node, so it is copied without writing to it */
+        Game state = game.copyWithoutSplit();
+        state.reseed(seed);
 
+        state.advanceUntil(AgentSelector.of(junctions.keySet()), StopCondition.JUNCTION, Integer.MAX_VALUE, policy, null);
 
-        while (!areGhostsInJunction(state) || currentIndexes == indexesBefore) {
-            state.advanceGame(pacman.getMove(state, System.currentTimeMillis()), ghostsController.getMove(state, System.currentTimeMillis()));
-            currentIndexes = getGhostIndexes(state);
-        }
-
-        AiNode child = new AiNode (this, state, currentIndexes);
+        AiNode child = new AiNode (this, state, getGhostIndexes(state));
         child.actionMoves = nextMoves;
-        child.deltaReward = 0;
         return child;
 
 
     }
 
-    /* Returns whether or not any Ghosts that need a move are in a Junction */
-    private boolean areGhostsInJunction(Game state) {
-        for (GHOST ghost : junctions.keySet()) {
-            int index = state.getGhostCurrentNodeIndex(ghost);
-            if(state.isJunction(index))
-                return true;
+    /*
+     * Remove this node from its parent, and give the parent back the moves the node tried, so that they can be
+     * expanded again. Only for a leaf that was never visited and has nothing being played out from it: its reward and
+     * visits are 0, so UCT would never select it again.
+     */
+    void discard() {
+        synchronized (parent) {
+            parent.children.remove(this);
+            for (Map.Entry<GHOST, MOVE> entry : newlyTriedMoves.entrySet())
+                parent.triedMoves.get(entry.getKey()).remove(entry.getValue());
         }
+    }
+
+    /* Whether this node is a leaf that was never visited, and has nothing being played out from it */
+    boolean isUnvisitedLeaf() {
+        return timesVisited == 0 && virtualLosses == 0 && children.isEmpty();
+    }
+
+    int getTimesVisited() {
+        return timesVisited;
+    }
+
+    double getDeltaReward() {
+        return Double.longBitsToDouble(deltaRewardBits);
+    }
+
+    int getVirtualLosses() {
+        return virtualLosses;
+    }
+
+    /* Add virtual losses while a visit is played out, or remove them with a negative count */
+    void addVirtualLosses(int count) {
+        if (count != 0)
+            VIRTUAL_LOSSES.addAndGet(this, count);
+    }
+
+    /* Count a visit with its reward, and remove the virtual losses added for it */
+    void update(double reward, int virtualLosses) {
+        TIMES_VISITED.incrementAndGet(this);
+
+        long bits;
+        do {
+            bits = deltaRewardBits;
+        } while (!DELTA_REWARD_BITS.compareAndSet(this, bits, Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + reward)));
 
-        return false;
+        addVirtualLosses(-virtualLosses);
     }
 
     /* Return indexes of Ghosts */
@@ -0,0 +1,170 @@
+package pacman.entries.ghosts;
+
+import pacman.controllers.SearchBudget;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * One decision of AiGhosts split into stages on different threads. One search selects and expands the nodes of the tree
+ * and queues the new leaves, while the searches of the rollout workers take them from the queue, play them out and post
+ * the rewards back. The selecting search backpropagates the rewards as they come in, so it is the only one that changes
+ * the tree. The leaves being played out carry virtual losses, which keep the selection from going down the same path
+ * again in the meantime.
+ */
+class AiPipeline {
+
+    /* The leaves that can be queued or played out at once for every worker */
+    private static final int LEAVES_PER_WORKER = 2;
+
+    /* How long to wait on a queue before checking the budget again */
+    private static final long POLL_MILLIS = 1;
+
+    private final AiNode root;
+    private final SearchBudget budget;
+    private final AiHistory history;
+    private final int workers;
+    private final int capacity;
+
+    private final BlockingQueue<AiNode> leaves;
+    private final BlockingQueue<Rollout> rewards = new LinkedBlockingQueue<>();
+
+    /* Set once no more leaves will be queued */
+    private volatile boolean selected;
+
+    /* The first failure of a rollout worker, which the selecting search rethrows once its leaves are back */
+    private Throwable failure;
+
+    AiPipeline(AiNode root, SearchBudget budget, AiHistory history, int workers) {
+        this.root = root;
+        this.budget = budget;
+        this.history = history;
+        this.workers = workers;
+        this.capacity = Math.max(1, workers * LEAVES_PER_WORKER);
+        this.leaves = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /*
+     * Select and queue leaves for as long as the budget allows, backpropagating the rewards posted in the meantime.
+     * Then wait for the leaves still being played out. The leaves still queued are left to the workers while there is
+     * time, and withdrawn once the time is up.
+     * With no workers, the search plays out the leaves itself.
+     * If a rollout worker fails, stop selecting, withdraw the leaves still queued and rethrow its failure.
+     * Return false if a node was reached that could neither be expanded nor selected from.
+     */
+    boolean select(AiSearch search, int virtualLosses) throws InterruptedException {
+        if (workers == 0)
+            return search.grow(root, budget, history, virtualLosses);
+
+        search.start(history, virtualLosses);
+        int inFlight = 0;
+        int iterations = 0;
+        boolean expanded = true;
+
+        while (failure == null && budget.isRunning(iterations)) {
+            inFlight -= backpropagate(search, rewards.poll());
+
+            if (inFlight == capacity) {
+                /* Every leaf is taken: wait for one to come back */
+                inFlight -= backpropagate(search, rewards.poll(POLL_MILLIS, TimeUnit.MILLISECONDS));
+                continue;
+            }
+
+            long iterationStart = System.nanoTime();
+            AiNode node = search.treePolicy(root);
+
+            if (node == null) {
+                expanded = false;
+                break;
+            }
+
+            budget.iterationDone(iterationStart);
+            leaves.add(node);
+            inFlight++;
+            iterations++;
+        }
+
+        selected = true;
+
+        while (inFlight > 0) {
+            AiNode node = budget.hasTime() && failure == null ? null : leaves.poll();
+
+            if (node != null) {
+                search.withdraw(node);
+                inFlight--;
+            } else {
+                inFlight -= backpropagate(search, rewards.poll(POLL_MILLIS, TimeUnit.MILLISECONDS));
+            }
+        }
+
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException) failure;
+        if (failure instanceof Error)
+            throw (Error) failure;
+
+        return expanded;
+    }
+
+    /*
+     * Play out the queued leaves and post their rewards, until no more are queued and none is left
+     * Every rollout is timed as an iteration of the budget, as the selecting search may wait that long for its reward
+     * If a rollout fails, its leaf is posted back without a reward, so that the selecting search is not left waiting
+     * for it, and the failure is rethrown
+     */
+    void rollouts(AiSearch search) throws InterruptedException {
+        search.start(history, 0);
+
+        while (true) {
+            AiNode node = leaves.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+
+            if (node != null) {
+                try {
+                    long rolloutStart = System.nanoTime();
+                    double reward = search.defaultPolicy(node);
+                    budget.iterationDone(rolloutStart);
+                    rewards.add(new Rollout(node, reward, null));
+                } catch (RuntimeException | Error e) {
+                    rewards.add(new Rollout(node, 0, e));
+                    throw e;
+                }
+            } else if (selected)
+                return;
+        }
+    }
+
+    /*
+     * Backpropagate every reward posted, starting with the one given if any, and return how many there were
+     * The leaves of failed rollouts are withdrawn instead, keeping the first failure
+     */
+    private int backpropagate(AiSearch search, Rollout rollout) {
+        int count = 0;
+
+        for (; rollout != null; rollout = rewards.poll()) {
+            if (rollout.failure == null) {
+                search.backpropagate(rollout.node, rollout.reward);
+            } else {
+                search.withdraw(rollout.node);
+                if (failure == null)
+                    failure = rollout.failure;
+            }
+            count++;
+        }
+
+        return count;
+    }
+
+    /* The reward of a leaf, or the failure of its rollout, posted back by a worker */
+    private static final class Rollout {
+        final AiNode node;
+        final double reward;
+        final Throwable failure;
+
+        Rollout(AiNode node, double reward, Throwable failure) {
+            this.node = node;
+            this.reward = reward;
+            this.failure = failure;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package pacman.entries.ghosts;
+
+import pacman.controllers.Controller;
+import pacman.controllers.PacmanController;
+import pacman.controllers.SearchBudget;
+import pacman.controllers.examples.RandomGhosts;
+import pacman.controllers.examples.StarterGhosts;
+import pacman.controllers.examples.StarterPacMan;
+import pacman.game.Constants.*;
+import pacman.game.AgentSelector;
+import pacman.game.Game;
+import pacman.game.TickPolicy;
+
+import java.util.*;
+
+/*
+ * One Monte Carlo tree search of AiGhosts. Everything a search changes is kept here rather than shared: the game
+ * the rollouts are played in, the controllers that play them, the random numbers and the scores and times the rewards
+ * are measured against. AiGhosts can then grow several trees at once, one per search, each on its own thread, or
+ * have several searches grow the same tree (see grow(-)), or have one search select the leaves that the others play
+ * out (see AiPipeline).
+ */
+class AiSearch {
+
+    /* Exploration Constant and aplha Variable */
+    private static final double c = 1.0f / Math.sqrt(2.0f);
+    private static final double alpha = 0.1;
+
+    private static final int ROLLOUT_TICKS = 20;
+    private static final int MACRO_ROLLOUT_TICKS = 60;
+
+    /* When in Default Policy, StarterPacman() will decide the Pacman agents moves */
+    private final PacmanController pacman = new StarterPacMan();
+    private final RandomGhosts rolloutGhosts = new RandomGhosts();
+
+    /* While a node is expanded, Pacman is moved by StarterPacman() and the other ghosts by StarterGhosts() */
+    private final StarterGhosts expansionGhosts = new StarterGhosts();
+    private final TickPolicy expansionPolicy = new TickPolicy() {
+        @Override
+        public int getPacmanMove(Game game) {
+            return pacman.getMove(game, System.currentTimeMillis()).ordinal();
+        }
+
+        @Override
+        public int getGhostMoves(Game game) {
+            return expansionGhosts.getPackedMove(game);
+        }
+    };
+
+    /* Scratch game that every rollout is reset into, instead of copying the node's game */
+    private Game rolloutState;
+    /* Seeds every rollout, so that the rollouts from one node don't all roll the same ghost reversals */
+    private final SplittableRandom rolloutSeeds = new SplittableRandom();
+
+    /* The scores and times of the rollouts of the tree, which the rewards are measured against */
+    private AiHistory history;
+
+    /* Scratch arrays for the distances in the rewards: the nodes of up to 4 ghosts, and the distances of up to 16 pairs */
+    private final int[] ghostNodes = new int[GHOST.values().length];
+    private final int[] ghostDistances = new int[GHOST.values().length * GHOST.values().length];
+
+    /* The virtual losses of every node on the way down, when the tree is shared */
+    private int virtualLosses;
+
+    /* Whether rollouts are played in macro steps over a longer horizon */
+    private boolean macroRollouts;
+
+    /*
+     * Grow the tree of the root given for as long as the budget allows, while other searches may be growing it too.
+     * The rewards are measured against the history given, which is shared by every search of the tree.
+     * Every node on the way down gets the virtual losses given until its visit is backpropagated.
+     * Stop early if the thread is interrupted, as when the decision is given up on.
+     * Return false if a node was reached that could neither be expanded nor selected from.
+     */
+    boolean grow(AiNode root, SearchBudget budget, AiHistory history, int virtualLosses) {
+        start(history, virtualLosses);
+
+        for (int iterations = 0; budget.isRunning(iterations) && !Thread.currentThread().isInterrupted(); iterations++) {
+
+            long iterationStart = System.nanoTime();
+
+        	/* Select nodes until leaf, then expand and return new node */
+            AiNode node = treePolicy(root);
+
+            if (node == null)
+                return false;
+
+            /* After simulating for a given period, return reward */
+            double reward = defaultPolicy(node);
+
+            /* Travel up visited nodes with reward and increasing number of times visited */
+            backpropagate(node, reward);
+
+            budget.iterationDone(iterationStart);
+        }
+
+        return true;
+    }
+
+    /* Play rollouts in macro steps, see AiGhosts.setMacroRollouts(-) */
+    void setMacroRollouts(boolean macroRollouts) {
+        this.macroRollouts = macroRollouts;
+    }
+
+    /* Set the history the rewards are measured against, and the virtual losses of the nodes on the way down */
+    void start(AiHistory history, int virtualLosses) {
+        this.history = history;
+        this.virtualLosses = virtualLosses;
+    }
+
+    /*
+     * while node is not fully expanded, select based one based on UCT
+	 * Once a node is reached that isn't fully expanded, expand
+	 * Expanding holds the lock of the node, so that threads sharing the tree don't try the same moves
+	 * If no node is returned, the virtual losses added on the way down are taken back
+     */
+    AiNode treePolicy(AiNode node) {
+        if (node == null)
+            return null;
+
+        node.addVirtualLosses(virtualLosses);
+
+        synchronized (node) {
+            if (!node.isFullyExpanded()) {
+                AiNode child = node.expand(expansionPolicy, rolloutSeeds.nextLong());
+                if (child != node)
+                    child.addVirtualLosses(virtualLosses);
+                return child;
+            }
+        }
+
+        AiNode leaf = treePolicy(getBestChild(node, c));
+        if (leaf == null)
+            node.addVirtualLosses(-virtualLosses);
+        return leaf;
+    }
+
+    /*
+     * Run simulation until any of these things happen:
+     * - Advancement in game passes threshold
+     * - Pacman was eaten
+     * - All pills eaten
+     * - All power pills eaten
+     *
+     * 	Reward based on formula in thesis.
+     *	Once simulation finished, return reward.
+     */
+    double defaultPolicy(AiNode node) {
+        int steps = 0;
+        double totalScore = 0;
+        Controller<MOVE> pacmanController = pacman;
+        RandomGhosts ghostController = rolloutGhosts;
+
+        if (node == null)
+            return 0;
+
+        Game state = getRolloutState(node.game);
+        state.empowerGhostEatScore();
+        int pacmanLivesBefore = state.getPacmanNumberOfLivesRemaining();
+        int numberOfGhostsEaten = 0;
+
+        int horizon = macroRollouts ? MACRO_ROLLOUT_TICKS : ROLLOUT_TICKS;
+
+        while (steps <= horizon && !state.wasPacManEaten() && state.getNumberOfActivePills() != state.getNumberOfPills() && state.getNumberOfActivePowerPills() != state.getNumberOfPowerPills()) {
+            if (macroRollouts && !state.isJunction(state.getPacmanCurrentNodeIndex())) {
+                steps += state.advanceMacro(AgentSelector.PACMAN, horizon + 1 - steps, null);
+            } else {
+                state.advanceGame(
+                        pacmanController.getMove(state, System.currentTimeMillis()).ordinal(),
+                        ghostController.getPackedMove(state)
+                );
+                steps++;
+            }
+
+            for (GHOST ghost : node.actionMoves.keySet()) {
+                if (state.wasGhostEaten(ghost))
+                    numberOfGhostsEaten++;
+            }
+        }
+
+        totalScore = getRewardScore(state, node, pacmanLivesBefore);
+        return totalScore;
+    }
+
+    /*
+     * Reset the scratch game to the given state, only copying the first time it is needed
+     * The game of a node may be read by other threads at the same time, so it is copied without writing to it
+     */
+    private Game getRolloutState(Game game) {
+        if (rolloutState == null) {
+            rolloutState = game.copyWithoutSplit();
+        } else {
+            game.copyInto(rolloutState);
+        }
+        rolloutState.reseed(rolloutSeeds.nextLong());
+        return rolloutState;
+    }
+
+  	/* 
+ 	 * Get score and time of game and add them to the history of scores and times achieved.
+ 	 * If Pacman was eaten, multiply score by 100.
+	 *
+	 * Penalty One based on how many ghosts are inside range when non-edible and outside range when edible.
+	 * Penalty Two based on the distance between ghosts being close together.
+	 *
+	 * Return reward after calculation.
+  	 */
+    private double getRewardScore(Game state, AiNode node, int pacmanLivesBefore) {
+        int caseOnePenalty = 0;
+        int caseTwoPenalty = 0;
+
+        int pacmanEatenMultiplier = 1;
+        int gameScore = state.getScore();
+        int gameTime = state.getTotalTime();
+
+        if (pacmanLivesBefore > state.getPacmanNumberOfLivesRemaining())
+            pacmanEatenMultiplier = 100;
+
+
+        /** If ghosts are in the correct range. */
+        int numOfEdibleGhostsInsideRange = 0;
+        int numOfNonEdibleGhostsInsideRange = 0;
+        int count = getGhostNodes(state, node.actionMoves.keySet());
+        int index = 0;
+        state.getShortestPathDistances(state.getPacmanCurrentNodeIndex(), ghostNodes, count, ghostDistances);
+        for (GHOST ghost : node.actionMoves.keySet()) {
+            int distance = ghostDistances[index++];
+            if (state.isGhostEdible(ghost)) {
+                if (distance < 40)
+                    numOfEdibleGhostsInsideRange++;
+            } else if (distance > 40)
+                numOfNonEdibleGhostsInsideRange++;
+        }
+        caseOnePenalty = (numOfNonEdibleGhostsInsideRange * 25) + (numOfEdibleGhostsInsideRange * 25);
+
+        /** If ghosts are in close proximity of each other. */
+        caseTwoPenalty = getCaseTwoPenalty(state, node.junctions);
+
+        /** Score Calculator based on game score and game time, against those of every rollout so far */
+        return history.add(gameScore, gameTime, caseOnePenalty + caseTwoPenalty, alpha) * pacmanEatenMultiplier;
+    }
+
+    /* 
+     * If only one MCTS ghost is being used, return 0.
+     * If distance between MCTS ghosts is within 15 game-units, penalty mulitplier increases.
+     * Return penalty.
+     */
+    private int getCaseTwoPenalty(Game game, EnumMap<GHOST, Integer> indexes) {
+        int penaltyMultiplier = 0;
+        if (indexes.keySet().size() == 1)
+            return 0;
+
+        else {
+            /* All the distances between the ghosts at once: ghost i to ghost j is at i * n + j */
+            int n = getGhostNodes(game, indexes.keySet());
+            game.getShortestPathDistances(ghostNodes, n, ghostNodes, n, ghostDistances);
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    if (i != j && ghostDistances[i * n + j] < 15)
+                        penaltyMultiplier++;
+                }
+            }
+
+            return 100 * penaltyMultiplier;
+        }
+    }
+
+    /* Write the nodes of the ghosts given into ghostNodes, in their order, and return how many there are */
+    private int getGhostNodes(Game game, Set<GHOST> ghosts) {
+        int index = 0;
+        for (GHOST ghost : ghosts)
+            ghostNodes[index++] = game.getGhostCurrentNodeIndex(ghost);
+        return index;
+    }
+
+    /* Return best child based on UCT value */
+    private AiNode getBestChild(AiNode node, double c) {
+        AiNode bestChild = null;
+
+        double bestValue = Double.MIN_VALUE;
+        for (AiNode child : node.children) {
+            double value = getUctValue(child, c);
+            if(value >= bestValue) {
+                bestValue = value;
+                bestChild = child;
+            }
+        }
+
+        return bestChild;
+    }
+
+    /* Return UCT value, counting the visits still being played out as visits without a reward */
+    private double getUctValue (AiNode child, double c) {
+        int timesVisited = child.getTimesVisited() + child.getVirtualLosses();
+        int parentTimesVisited = child.parent.getTimesVisited() + child.parent.getVirtualLosses();
+        return (float) ((child.getDeltaReward() / timesVisited) + c * Math.sqrt(2 * Math.log(parentTimesVisited) / timesVisited));
+    }
+
+    /* Travel up through visited nodes, add score and the amount of times it has been visited */
+    void backpropagate (AiNode currentNode, double reward) {
+        while (currentNode != null) {
+            currentNode.update(reward, virtualLosses);
+            currentNode = currentNode.parent;
+        }
+    }
+
+    /*
+     * Travel up from a node that won't be played out, taking back the virtual losses added on the way down
+     * A new leaf that is left unvisited is discarded, so that it doesn't stay in the tree where it can't be selected
+     */
+    void withdraw (AiNode currentNode) {
+        while (currentNode != null) {
+            currentNode.addVirtualLosses(-virtualLosses);
+            AiNode parent = currentNode.parent;
+            if (parent != null && currentNode.isUnvisitedLeaf())
+                currentNode.discard();
+            currentNode = parent;
+        }
+    }
+}
@@ -1,11 +1,13 @@
 
 package pacman.entries.model2;
 
-import pacman.controllers.Controller;
-import pacman.game.Constants.DM;
+import pacman.controllers.examples.StarterGhosts;
 import pacman.game.Constants.GHOST;
 import pacman.game.Constants.MOVE;
+import pacman.game.AgentSelector;
 import pacman.game.Game;
+import pacman.game.StopCondition;
+import pacman.game.TickPolicy;
 
 import java.util.*;
 
@@ -26,8 +28,33 @@ public class MctsNode {
 	double deltaReward;
 	private ArrayList<MOVE> triedMoves = new ArrayList<>();
 	public Game game;
+	//the controller searching the tree, whose scratch arrays the node uses
+	private final MctsPacman controller;
+
+	//pacman follows the path, the ghosts are played by MctsPacman.ghosts
+	private static final TickPolicy FOLLOW_PATH = new TickPolicy() {
+		@Override
+		public int getPacmanMove(Game game) {
+			return TickPolicy.FOLLOW_PATH;
+		}
+
+		@Override
+		public int getGhostMoves(Game game) {
+			return MctsPacman.ghosts.getPackedMove(game);
+		}
+	};
+
+	//the root of a tree searched by the controller given
+	MctsNode(MctsPacman controller, Game game, int junction) {
+		this(controller, null, game, junction);
+	}
 
 	MctsNode(MctsNode parent, Game game, int junction) {
+		this(parent.controller, parent, game, junction);
+	}
+
+	private MctsNode(MctsPacman controller, MctsNode parent, Game game, int junction) {
+		this.controller = controller;
 		this.parent = parent;
 		this.actionMove = MOVE.NEUTRAL;
 		this.deltaReward = -1.0f;
@@ -58,11 +85,9 @@ public class MctsNode {
 	private MctsNode GetClosestJunctionInDir(MOVE dir) {
 
 		Game state = game.copy();
-		Controller<EnumMap<GHOST, MOVE>> ghostController = MctsPacman.ghosts;
+		StarterGhosts ghostController = MctsPacman.ghosts;
 
-		int from = state.getPacmanCurrentNodeIndex();
-		int current = from;
-		MOVE currentPacmanDir = dir;
+		int current;
 
 		//Simulation reward variables
 		int pillsBefore = state.getNumberOfActivePills();
@@ -70,17 +95,14 @@ public class MctsNode {
 		int livesBefore = state.getPacmanNumberOfLivesRemaining();
 		float transition_reward;
 
-		// use current == from , so we skip the junction we are currently in
-		while(!state.isJunction(current) || current == from){
-
-			//make pacman follow the path
-			currentPacmanDir = GetMoveToFollowPath(state,currentPacmanDir);
-
-			//advance game state
-			state.advanceGame(currentPacmanDir,
-					ghostController.getMove(state,
-							System.currentTimeMillis()));
+		//take the first step in dir, which also leaves the junction we are currently in
+		state.advanceGame(GetMoveToFollowPath(state,dir).ordinal(),
+				ghostController.getPackedMove(state));
+		current = state.getPacmanCurrentNodeIndex();
 
+		//then make pacman follow the path to the next junction
+		if(!state.isJunction(current)) {
+			state.advanceUntil(AgentSelector.PACMAN, StopCondition.JUNCTION, Integer.MAX_VALUE, FOLLOW_PATH, null);
 			current = state.getPacmanCurrentNodeIndex();
 		}
 
@@ -122,7 +144,7 @@ public class MctsNode {
 	}
 
 	boolean isTerminalGameState() {
-		return game.wasPacManEaten() || game.getActivePillsIndices().length == 0;
+		return game.wasPacManEaten() || game.getNumberOfActivePills() == 0;
 	}
 
 	//Pick randomly non-tried action
@@ -163,10 +185,15 @@ public class MctsNode {
 		return possibleMoves.length == children.size();
 	}
 
-	private static int AvgDistanceFromGhosts(Game state) {
-		int sum = 0;
+	private int AvgDistanceFromGhosts(Game state) {
+		int[] ghostNodes = controller.ghostNodes;
+		int[] ghostDistances = controller.ghostDistances;
 		for(GHOST ghost : GHOST.values())
-			sum += state.getDistance(state.getPacmanCurrentNodeIndex(), state.getGhostCurrentNodeIndex(ghost), DM.PATH);
+			ghostNodes[ghost.ordinal()] = state.getGhostCurrentNodeIndex(ghost);
+		state.getShortestPathDistances(state.getPacmanCurrentNodeIndex(), ghostNodes, ghostNodes.length, ghostDistances);
+		int sum = 0;
+		for(int distance : ghostDistances)
+			sum += distance;
 		return sum/4;
 	}
 
@@ -1,11 +1,13 @@
 package pacman.entries.model2;
 
 import pacman.controllers.Controller;
+import pacman.controllers.SearchBudget;
 import pacman.controllers.examples.RandomPacMan;
 import pacman.controllers.examples.StarterGhosts;
 import pacman.game.Constants.DM;
 import pacman.game.Constants.GHOST;
 import pacman.game.Constants.MOVE;
+import pacman.game.AgentSelector;
 import pacman.game.Game;
 
 import java.util.*;
@@ -23,12 +25,38 @@ public class MctsPacman extends Controller<MOVE> {
 	private static final double C = 1.0f/Math.sqrt(2.0f);
 
 	//PROPERTIES
-	public static Controller<EnumMap<GHOST,MOVE>> ghosts = new StarterGhosts();
+	public static StarterGhosts ghosts = new StarterGhosts();
 	private static final int ghost_dist = 9;
 	private static final int hunt_dist = 25;
 	private static final int TREE_LIMIT = 35;
 	static int tree_length = 0 ;
 
+	//scratch game that every rollout is reset into instead of copying the node's game
+	private Game rolloutState;
+	//seeds every rollout, so that the rollouts from one node don't all roll the same ghost reversals
+	private final SplittableRandom rolloutSeeds = new SplittableRandom();
+	//whether rollouts are played in macro steps, see setMacroRollouts
+	private boolean macroRollouts = false;
+	//macro steps end at the junctions of pacman and of every ghost, so that the ghosts controller still moves them there
+	private static final AgentSelector MACRO_DECIDING = AgentSelector.GHOSTS.withPacman();
+	private static final int ROLLOUT_TICKS = 15;
+	private static final int MACRO_ROLLOUT_TICKS = 45;
+	//scratch arrays for the distances from pacman to the ghosts, see MctsNode
+	final int[] ghostNodes = new int[GHOST.values().length];
+	final int[] ghostDistances = new int[GHOST.values().length];
+	//how long a search runs for: by default until the move is due, or for 30ms when no time is due
+	private SearchBudget budget = SearchBudget.ofMillis(30);
+
+	public void setBudget(SearchBudget budget) {
+		this.budget = budget;
+	}
+
+	//play rollouts in macro steps (see Game.advanceMacro) over a longer horizon: pacman then only decides at
+	//junctions, and the ghosts controller only at the junctions of the ghosts, between which they follow their paths
+	public void setMacroRollouts(boolean macroRollouts) {
+		this.macroRollouts = macroRollouts;
+	}
+
 	@Override
 	public MOVE getMove(Game game, long timeDue) {
 
@@ -44,7 +72,7 @@ public class MctsPacman extends Controller<MOVE> {
 		// run Mcts when in a junction to get next move (next move is based on next junction)
 		if(pacmanInJunction(game)) {
 			tree_length = 0;
-			return MctsSearch(game);
+			return MctsSearch(game, timeDue);
 		}
 
 		// follow path until chosen junction is met.
@@ -77,27 +105,40 @@ public class MctsPacman extends Controller<MOVE> {
 		return game.isJunction(game.getPacmanCurrentNodeIndex());
 	}
 
-	private MOVE MctsSearch(Game game) {
+	private MOVE MctsSearch(Game game, long timeDue) {
 
 		//create root node with state0
-		MctsNode root = new MctsNode(null,game,game.getPacmanCurrentNodeIndex());
+		MctsNode root = new MctsNode(this,game,game.getPacmanCurrentNodeIndex());
 
-		long start = new Date().getTime();
+		budget.start(timeDue);
+		//set when the tree policy finds no node, in which case pacman goes down
+		boolean stuck = false;
 
-		while (new Date().getTime() < start + 30 && tree_length <= TREE_LIMIT) {
+		for (int iterations = 0; budget.isRunning(iterations) && tree_length <= TREE_LIMIT; iterations++) {
+			long iterationStart = System.nanoTime();
 			MctsNode nd = TreePolicy(root);
-			if(nd == null) return MOVE.DOWN;
+			if(nd == null) {
+				stuck = true;
+				break;
+			}
 			float reward = DefaultPolicy(nd);
 			Backpropagation(nd,reward);
+			budget.iterationDone(iterationStart);
 		}
 
-		MctsNode bestChild = BestChild(root,0);
+		budget.stop();
+		MOVE move;
 
-		if(bestChild == null) {
-			return new RandomPacMan().getMove(game,-1);
+		if(stuck) {
+			move = MOVE.DOWN;
+		}
+		else {
+			MctsNode bestChild = BestChild(root,0);
+			move = bestChild == null ? new RandomPacMan().getMove(game,-1) : bestChild.actionMove;
 		}
 
-		return bestChild.actionMove;
+		budget.finish();
+		return move;
 	}
 
 
@@ -121,9 +162,9 @@ public class MctsPacman extends Controller<MOVE> {
 
 		int steps = 0;
 		Controller<MOVE> pacManController = new RandomPacMan();
-		Controller<EnumMap<GHOST,MOVE>> ghostController = ghosts;
+		StarterGhosts ghostController = ghosts;
 		if(nd == null) return 0;
-		Game state = nd.game.copy();
+		Game state = GetRolloutState(nd.game);
 		int pillsBefore = state.getNumberOfActivePills();
 		int livesBefore = state.getPacmanNumberOfLivesRemaining();
 
@@ -132,15 +173,21 @@ public class MctsPacman extends Controller<MOVE> {
 			return 0;
 		}
 
+		int horizon = macroRollouts ? MACRO_ROLLOUT_TICKS : ROLLOUT_TICKS;
+
 		while(!state.gameOver()) {
 
 			//advance game
-			state.advanceGame(pacManController.getMove(state,System.currentTimeMillis()),
-					ghostController.getMove(state,System.currentTimeMillis()));
-
-			steps++;
+			if(macroRollouts && !state.requiresAction()) {
+				steps += state.advanceMacro(MACRO_DECIDING, horizon - steps, null);
+			}
+			else {
+				state.advanceGame(pacManController.getMove(state,System.currentTimeMillis()).ordinal(),
+						ghostController.getPackedMove(state));
+				steps++;
+			}
 
-			if(steps >= 15){
+			if(steps >= horizon){
 				break;
 			}
 		}
@@ -161,6 +208,17 @@ public class MctsPacman extends Controller<MOVE> {
 		return  1.0f -  ((float) state.getNumberOfActivePills() / ((float) pillsBefore));
 	}
 
+	private Game GetRolloutState(Game game) {
+		if(rolloutState == null) {
+			rolloutState = game.copy();
+		}
+		else {
+			game.copyInto(rolloutState);
+		}
+		rolloutState.reseed(rolloutSeeds.nextLong());
+		return rolloutState;
+	}
+
 	private MctsNode BestChild(MctsNode nd, double C) {
 		MctsNode bestChild = null;
 
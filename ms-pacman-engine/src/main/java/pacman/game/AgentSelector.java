@@ -0,0 +1,54 @@
+package pacman.game;
+
+import pacman.game.Constants.GHOST;
+
+/**
+ * Selects the agents that {@link Game#advanceUntil(AgentSelector, StopCondition, int, TickPolicy, TickEvents)}
+ * watches when checking for StopCondition.JUNCTION.
+ * <p>
+ * Selectors are immutable, so they can be created once and shared by every search.
+ */
+public final class AgentSelector {
+    public static final AgentSelector PACMAN = new AgentSelector(true, 0);
+    public static final AgentSelector GHOSTS = new AgentSelector(false, 0xF);
+
+    final boolean pacman;
+    //bit i is set if the ghost with ordinal i is selected
+    final int ghosts;
+
+    private AgentSelector(boolean pacman, int ghosts) {
+        this.pacman = pacman;
+        this.ghosts = ghosts;
+    }
+
+    /**
+     * Selects the ghosts given.
+     *
+     * @param ghosts The ghosts to select
+     * @return The selector
+     */
+    public static AgentSelector of(Iterable<GHOST> ghosts) {
+        int mask = 0;
+        for (GHOST ghost : ghosts) {
+            mask |= 1 << ghost.ordinal();
+        }
+        return new AgentSelector(false, mask);
+    }
+
+    /**
+     * Selects Ms Pac-Man as well as the agents already selected.
+     *
+     * @return The selector
+     */
+    public AgentSelector withPacman() {
+        return new AgentSelector(true, ghosts);
+    }
+
+    public boolean isPacmanSelected() {
+        return pacman;
+    }
+
+    public boolean isGhostSelected(GHOST ghost) {
+        return (ghosts & (1 << ghost.ordinal())) != 0;
+    }
+}
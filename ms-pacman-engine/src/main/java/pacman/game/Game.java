@@ -5,11 +5,14 @@ import pacman.game.comms.Messenger;
 import pacman.game.info.GameInfo;
 import pacman.game.internal.*;
 
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.EnumMap;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import static pacman.game.Constants.*;
 
@@ -37,24 +40,33 @@ import static pacman.game.Constants.*;
  * <p>
  * The game can be cloned to produce a CO Forward Model
  * <p>
+ * The game can also be written into a reusable GameSnapshot and reset from it, or copied straight into
+ * another game with copyInto, which avoids allocating a new game for every rollout of a search
+ * <p>
  * The game can be cloned and given PO constraints - it cannot be forwarded from here unless
  * it has been provided with a GameInfo. Exact details tbc
  */
 public final class Game {
-    private static PathsCache[] caches = new PathsCache[NUM_MAZES];
-    //mazes are only loaded once since they don't change over time
-    private static Maze[] mazes = new Maze[NUM_MAZES];
+    private static final MOVE[] MOVES = MOVE.values();
+    private static final int NUM_MOVES = MOVES.length;
+    private static final GHOST[] GHOST_TYPES = GHOST.values();
+    //mazes and their paths caches are only loaded once since they don't change over time, and only when first needed.
+    //The built-in mazes come first, followed by those added with addMaze(-); the array is replaced when one is added
+    private static volatile MazeSlot[] mazes;
+    //whether the greedy PATH next move queries of games created from now on read the maze's NextMoveTable
+    private static volatile boolean nextMoveTables = false;
+    //whether the next maze is prepared in the background when a level starts, see setMazeWarmUp
+    private static volatile boolean mazeWarmUp = false;
+    private static ExecutorService warmUpExecutor;
+    private static Thread warmUpThread;
 
     static {
-        for (int i = 0; i < mazes.length; i++) {
-            mazes[i] = new Maze(i);
-        }
-    }
+        MazeSlot[] builtIn = new MazeSlot[NUM_MAZES];
 
-    static {
-        for (int i = 0; i < mazes.length; i++) {
-            caches[i] = new PathsCache(i);
+        for (int i = 0; i < NUM_MAZES; i++) {
+            builtIn[i] = new MazeSlot(null);
         }
+        mazes = builtIn;
     }
 
     public static final int CLONE = -1;
@@ -64,38 +76,75 @@ public final class Game {
     public static final int SUE = GHOST.SUE.ordinal();
     public static final int PACMAN = 5;
 
+    //packed ghost moves: GHOST_MOVE_BITS per ghost, ordered by ordinal, holding the MOVE ordinal or NO_GHOST_MOVE
+    public static final int GHOST_MOVE_BITS = 3;
+    public static final int NO_GHOST_MOVE = 7;
+    public static final int NO_GHOST_MOVES = 0xFFF;
+
+    //layout of the state block
+    private static final int MAZE_INDEX = 0;
+    private static final int LEVEL_COUNT = 1;
+    private static final int CURRENT_LEVEL_TIME = 2;
+    private static final int TOTAL_TIME = 3;
+    private static final int SCORE = 4;
+    private static final int GHOST_EAT_MULTIPLIER = 5;
+    private static final int TIME_OF_LAST_GLOBAL_REVERSAL = 6;
+    private static final int FLAGS = 7;
+    private static final int ACTIVE_PILLS = 8;
+    private static final int ACTIVE_POWER_PILLS = 9;
+    private static final int PACMAN_NODE = 10;
+    private static final int PACMAN_LAST_MOVE = 11;
+    private static final int PACMAN_LIVES = 12;
+    private static final int GHOSTS = 13;
+    //per ghost, relative to GHOSTS + ghost * GHOST_STRIDE
+    private static final int GHOST_NODE = 0;
+    private static final int GHOST_EDIBLE_TIME = 1;
+    private static final int GHOST_LAIR_TIME = 2;
+    private static final int GHOST_LAST_MOVE = 3;
+    private static final int GHOST_STRIDE = 4;
+    //the state of the random number generator (high and low word) and the number of copies split off it
+    private static final int RNG = GHOSTS + NUM_GHOSTS * GHOST_STRIDE;
+    private static final int RNG_SPLITS = RNG + 2;
+    //the Zobrist key of the state (high and low word), see stateHash()
+    private static final int HASH = RNG_SPLITS + 1;
+    //the pill bits (32 per int) followed by the power pill bits
+    private static final int PILLS = HASH + 2;
+
+    //bits of the FLAGS entry
+    private static final int GAME_OVER = 1;
+    private static final int PACMAN_WAS_EATEN = 1 << 1;
+    private static final int PILL_WAS_EATEN = 1 << 2;
+    private static final int POWER_PILL_WAS_EATEN = 1 << 3;
+    private static final int PACMAN_RECEIVED_EXTRA_LIFE = 1 << 4;
+    private static final int GHOST_WAS_EATEN = 1 << 8;     //shifted by the ghost's ordinal
+    private static final int GHOST_ABSENT = 1 << 12;       //shifted by the ghost's ordinal, set for ghosts left out by a GameInfo
+
+    //constants of the splitmix64 generator, as used by java.util.SplittableRandom
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final long SPLIT_GAMMA = 0xdb4f0b9175ae2165L;
+    private static final int GHOSTS_ABSENT = 0xF * GHOST_ABSENT;
+
     private final POType poType;
     private final int sightLimit;
+    //the visibility of the current maze under the PO type and sight limit, looked up on first use
+    private VisibilityTable visibility;
     private boolean ghostsPresent = true;
     private boolean pillsPresent = true;
     private boolean powerPillsPresent = true;
-    //pills stored as bitsets for efficient copying
-    private BitSet pills;
-    private BitSet powerPills;
-    //all the game's variables
-    private int mazeIndex;
-    private int levelCount;
-    private int currentLevelTime;
-    private int totalTime;
-    private int score;
-    private int ghostEatMultiplier;
-    private int timeOfLastGlobalReversal;
-    private boolean gameOver;
-    private boolean pacmanWasEaten;
-    private boolean pillWasEaten;
-    private boolean powerPillWasEaten;
-    private EnumMap<GHOST, Boolean> ghostsEaten;
-    //the data relating to internalPacman and the ghosts are stored in respective data structures for clarity
-    private PacMan internalPacman;
-    private EnumMap<GHOST, Ghost> ghosts;
+    //all the game's variables, internalPacman, the ghosts and the pill bits are packed into a single block
+    //so that copying the game is a single array copy. The layout is given by the offsets above
+    private int[] state;
+    //offset of the power pill bits, which follow the pill bits of the current maze
+    private int powerPillsOffset;
     // PO State
     private boolean po;
     private boolean beenBlanked;
     // either ID of a ghost or higher for internalPacman
     private int agent = 0;
     private Maze currentMaze;
-    private Random rnd;
     private long seed;
+    //whether the greedy PATH next move queries read the maze's NextMoveTable, as set when the game was created
+    private boolean useNextMoveTables;
     // Messenger - null if not available
     private Messenger messenger;
 
@@ -130,11 +179,11 @@ public final class Game {
     }
 
     public Game(long seed, int initialMaze, Messenger messenger, POType poType, int sightLimit) {
-        this.seed = seed;
-        rnd = new Random(seed);
         this.messenger = messenger;
+        this.useNextMoveTables = nextMoveTables;
 
         init(initialMaze);
+        reseed(seed);
         this.poType = poType;
         this.sightLimit = sightLimit;
     }
@@ -153,9 +202,9 @@ public final class Game {
 
     private int getNodeIndexOfOwner() {
         if (agent >= NUM_GHOSTS) {
-            return internalPacman.currentNodeIndex;
+            return state[PACMAN_NODE];
         } else {
-            return ghosts.get(GHOST.values()[agent]).currentNodeIndex;
+            return state[GHOSTS + agent * GHOST_STRIDE + GHOST_NODE];
         }
     }
 
@@ -167,67 +216,30 @@ public final class Game {
         if (nodeIndex == -1) {
             return false;
         }
-        Node currentNode = (mazes[mazeIndex]).graph[getNodeIndexOfOwner()];
-        Node check = (mazes[mazeIndex]).graph[nodeIndex];
-
-        switch (poType) {
-            case LOS:
-                return handleLOS(currentNode, check) && straightRouteBlocked(currentNode, check);
-            case RADIUS:
-                double manhattan = getManhattanDistance(currentNode.nodeIndex, check.nodeIndex);
-                return (manhattan <= sightLimit);
-            case FF_LOS:
-                Boolean x = handleFFLOS(currentNode, check);
-                if (x != null) return x;
-                break;
-            case FULL:
-                return true;
+        if (poType == POType.FULL) {
+            return true;
         }
-        return false;
-    }
 
-    private Boolean handleFFLOS(Node currentNode, Node check) {
-        if (currentNode.x == check.x || currentNode.y == check.y) {
-            // Get direction currently going in
-            MOVE previousMove = (agent >= NUM_GHOSTS) ? internalPacman.lastMoveMade : ghosts.get(GHOST.values()[agent]).lastMoveMade;
-            switch (previousMove) {
-                case UP:
-                    if (currentNode.x == check.x && currentNode.y >= check.y) {
-                        return straightRouteBlocked(currentNode, check);
-                    }
-                    break;
-                case DOWN:
-                    if (currentNode.x == check.x && currentNode.y <= check.y) {
-                        return straightRouteBlocked(currentNode, check);
-                    }
-                    break;
-                case LEFT:
-                    if (currentNode.y == check.y && currentNode.x >= check.x) {
-                        return straightRouteBlocked(currentNode, check);
-                    }
-                    break;
-                case RIGHT:
-                    if (currentNode.y == check.y && currentNode.x <= check.x) {
-                        return straightRouteBlocked(currentNode, check);
-                    }
-                    break;
-            }
-        }
-        return null;
+        return (getVisibleRow()[nodeIndex >>> 5] & (1 << nodeIndex)) != 0;
     }
 
-    private boolean handleLOS(Node currentNode, Node check) {
-        return currentNode.x == check.x || currentNode.y == check.y;
-    }
+    /**
+     * The nodes, pills and power pills the owner of this game can see from where it is (see VisibilityTable), or
+     * null if it can see everything.
+     */
+    private int[] getVisibleRow() {
+        if (!po || poType == POType.FULL) {
+            return null;
+        }
 
-    private boolean straightRouteBlocked(Node startNode, Node endNode) {
-        double manhattan = getManhattanDistance(startNode.nodeIndex, endNode.nodeIndex);
+        VisibilityTable table = visibility;
 
-        if (manhattan <= sightLimit) {
-            double shortestPath = getShortestPathDistance(startNode.nodeIndex, endNode.nodeIndex);
-            return (manhattan == shortestPath);
+        if (table == null || table.getMaze() != currentMaze) {
+            table = visibility = currentMaze.getVisibility(poType, sightLimit);
         }
-        return false;
+
+        int lastMove = agent >= NUM_GHOSTS ? state[PACMAN_LAST_MOVE] : state[GHOSTS + agent * GHOST_STRIDE + GHOST_LAST_MOVE];
+        return table.getRow(getNodeIndexOfOwner(), lastMove);
     }
 
     /**
@@ -236,38 +248,160 @@ public final class Game {
      * @param initialMaze the initial maze
      */
     private void init(int initialMaze) {
-        mazeIndex = initialMaze;
-        score = currentLevelTime = levelCount = totalTime = 0;
-        ghostEatMultiplier = 1;
-        gameOver = false;
-        timeOfLastGlobalReversal = -1;
-        pacmanWasEaten = false;
-        pillWasEaten = false;
-        powerPillWasEaten = false;
+        setMaze(initialMaze);
+        state[SCORE] = state[CURRENT_LEVEL_TIME] = state[LEVEL_COUNT] = state[TOTAL_TIME] = 0;
+        state[GHOST_EAT_MULTIPLIER] = 1;
+        state[TIME_OF_LAST_GLOBAL_REVERSAL] = -1;
+        state[FLAGS] = 0;
+
+        setPills();
+        initGhosts();
+
+        state[PACMAN_NODE] = currentMaze.initialPacManNodeIndex;
+        state[PACMAN_LAST_MOVE] = MOVE.LEFT.ordinal();
+        state[PACMAN_LIVES] = NUM_LIVES;
+        rehash();
+    }
 
-        ghostsEaten = new EnumMap<>(GHOST.class);
+    /**
+     * Points the game at the maze given and makes sure the state block has room for its pills.
+     *
+     * @param index the maze index
+     */
+    private void setMaze(int index) {
+        currentMaze = getMaze(index);
 
-        for (GHOST ghost : GHOST.values()) {
-            ghostsEaten.put(ghost, false);
+        if (mazeWarmUp) {
+            warmUp(nextMaze(index));
         }
 
-        currentMaze = mazes[mazeIndex];
-        setPills();
-        initGhosts();
+        powerPillsOffset = PILLS + words(currentMaze.pillIndices.length);
+
+        int length = powerPillsOffset + words(currentMaze.powerPillIndices.length);
+
+        if (state == null) {
+            state = new int[length];
+        } else if (state.length != length) {
+            state = Arrays.copyOf(state, length);
+        }
+        state[MAZE_INDEX] = index;
+    }
+
+    /**
+     * Gets the maze given, loading it if this is the first time it is needed. Mazes can be loaded by several
+     * threads at once; each one is only loaded once.
+     */
+    private static Maze getMaze(int index) {
+        MazeSlot slot = mazes[index];
+        Maze maze = slot.maze;
+
+        if (maze == null) {
+            synchronized (slot.mazeLock) {
+                maze = slot.maze;
+
+                if (maze == null) {
+                    maze = new Maze(index);
+                    slot.maze = maze;
+                }
+            }
+        }
 
-        internalPacman = new PacMan(currentMaze.initialPacManNodeIndex, MOVE.LEFT, NUM_LIVES, false);
+        return maze;
+    }
+
+    /**
+     * Gets the paths cache of the maze given, loading it if this is the first time it is needed. Building a cache
+     * creates a game on the same maze, so this takes the cache lock before the maze lock.
+     */
+    private static PathsCache getPathsCache(int index) {
+        MazeSlot slot = mazes[index];
+        PathsCache cache = slot.cache;
+
+        if (cache == null) {
+            synchronized (slot.cacheLock) {
+                cache = slot.cache;
+
+                if (cache == null) {
+                    cache = PathsCache.load(index);
+                    slot.cache = cache;
+                }
+            }
+        }
+
+        return cache;
+    }
+
+    /**
+     * Adds a maze that games can be played on, such as one made by a MazeGenerator, and returns the index to
+     * create the games with. A game started on an added maze plays it at every level instead of moving on to the
+     * next maze. Its paths cache is computed when it is first needed.
+     *
+     * @param maze the maze to add
+     * @return the index of the maze, from NUM_MAZES on
+     */
+    public static synchronized int addMaze(Maze maze) {
+        MazeSlot[] slots = Arrays.copyOf(mazes, mazes.length + 1);
+
+        slots[slots.length - 1] = new MazeSlot(maze);
+        mazes = slots;
+        return slots.length - 1;
+    }
+
+    //the maze of the level after one played on the maze given
+    private static int nextMaze(int index) {
+        return index < NUM_MAZES ? (index + 1) % NUM_MAZES : index;
+    }
+
+    /**
+     * Makes every game prepare the next maze in a background thread when a level starts, so a game moving to
+     * the next level does not wait for its maze, paths cache and distances to be loaded. Off by default, in
+     * which case a maze is only loaded by the first game that plays it.
+     *
+     * @param enabled true to prepare the next maze in the background
+     */
+    public static void setMazeWarmUp(boolean enabled) {
+        mazeWarmUp = enabled;
+    }
+
+    private static synchronized void warmUp(final int index) {
+        //the games created while preparing a maze would otherwise prepare all the others
+        if (Thread.currentThread() == warmUpThread || mazes[index].cache != null) {
+            return;
+        }
+
+        if (warmUpExecutor == null) {
+            warmUpExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    warmUpThread = new Thread(runnable, "maze-warm-up");
+                    warmUpThread.setDaemon(true);
+                    return warmUpThread;
+                }
+            });
+        }
+
+        warmUpExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                getMaze(index).prepare();
+                getPathsCache(index);
+            }
+        });
+    }
+
+    private static int words(int bits) {
+        return (bits + 31) >>> 5;
     }
 
     /**
      * _new level reset.
      */
     private void newLevelReset() {
-        mazeIndex = ++mazeIndex % NUM_MAZES;
-        levelCount++;
-        currentMaze = mazes[mazeIndex];
+        setMaze(nextMaze(state[MAZE_INDEX]));
+        state[LEVEL_COUNT]++;
 
-        currentLevelTime = 0;
-        ghostEatMultiplier = 1;
+        state[CURRENT_LEVEL_TIME] = 0;
+        state[GHOST_EAT_MULTIPLIER] = 1;
 
         setPills();
         levelReset();
@@ -277,12 +411,13 @@ public final class Game {
      * _level reset.
      */
     private void levelReset() {
-        ghostEatMultiplier = 1;
+        state[GHOST_EAT_MULTIPLIER] = 1;
 
         initGhosts();
 
-        internalPacman.currentNodeIndex = currentMaze.initialPacManNodeIndex;
-        internalPacman.lastMoveMade = MOVE.LEFT;
+        state[PACMAN_NODE] = currentMaze.initialPacManNodeIndex;
+        state[PACMAN_LAST_MOVE] = MOVE.LEFT.ordinal();
+        rehash();
     }
 
     /**
@@ -292,25 +427,113 @@ public final class Game {
      */
     private void setPills() {
         if (pillsPresent) {
-            pills = new BitSet(currentMaze.pillIndices.length);
-            pills.set(0, currentMaze.pillIndices.length);
+            state[ACTIVE_PILLS] = fillBits(PILLS, currentMaze.pillIndices.length);
         }
         if (powerPillsPresent) {
-            powerPills = new BitSet(currentMaze.powerPillIndices.length);
-            powerPills.set(0, currentMaze.powerPillIndices.length);
+            state[ACTIVE_POWER_PILLS] = fillBits(powerPillsOffset, currentMaze.powerPillIndices.length);
         }
     }
 
+    private int fillBits(int offset, int length) {
+        for (int i = 0; i < length; i += 32) {
+            state[offset + (i >>> 5)] = length - i >= 32 ? -1 : (1 << (length - i)) - 1;
+        }
+        return length;
+    }
+
     /**
      * init ghosts.
      */
     private void initGhosts() {
-        ghosts = new EnumMap<>(GHOST.class);
+        for (int i = 0; i < NUM_GHOSTS; i++) {
+            int ghost = GHOSTS + i * GHOST_STRIDE;
+            state[ghost + GHOST_NODE] = currentMaze.lairNodeIndex;
+            state[ghost + GHOST_EDIBLE_TIME] = 0;
+            state[ghost + GHOST_LAIR_TIME] = (int) (GHOST_TYPES[i].initialLairTime * (Math.pow(LAIR_REDUCTION, state[LEVEL_COUNT] % LEVEL_RESET_REDUCTION)));
+            state[ghost + GHOST_LAST_MOVE] = MOVE.NEUTRAL.ordinal();
+            state[FLAGS] &= ~(GHOST_ABSENT << i);
+        }
+    }
+
+    private boolean isSet(int flag) {
+        return (state[FLAGS] & flag) != 0;
+    }
+
+    private void setFlag(int flag, boolean value) {
+        if (value) {
+            state[FLAGS] |= flag;
+        } else {
+            state[FLAGS] &= ~flag;
+        }
+    }
+
+    private boolean isPresent(int ghost) {
+        return (state[FLAGS] & (GHOST_ABSENT << ghost)) == 0;
+    }
+
+    private boolean isPillActive(int pillIndex) {
+        return (state[PILLS + (pillIndex >>> 5)] & (1 << pillIndex)) != 0;
+    }
+
+    private boolean isPowerPillActive(int powerPillIndex) {
+        return (state[powerPillsOffset + (powerPillIndex >>> 5)] & (1 << powerPillIndex)) != 0;
+    }
+
+    private void setBit(int offset, int index, boolean value) {
+        int word = offset + (index >>> 5);
+        put(word, value ? state[word] | (1 << index) : state[word] & ~(1 << index));
+    }
+
+    /**
+     * Sets an entry of the state block that is part of the Zobrist key and updates the key.
+     *
+     * @param index the entry
+     * @param value the new value
+     */
+    private void put(int index, int value) {
+        setHash(getHash() ^ key(index, state[index]) ^ key(index, value));
+        state[index] = value;
+    }
 
-        for (GHOST ghostType : GHOST.values()) {
-            ghosts.put(ghostType, new Ghost(ghostType, currentMaze.lairNodeIndex, 0,
-                    (int) (ghostType.initialLairTime * (Math.pow(LAIR_REDUCTION, levelCount % LEVEL_RESET_REDUCTION))), MOVE.NEUTRAL));
+    /**
+     * Updates the Zobrist key for an entry that was written directly, possibly several times.
+     *
+     * @param index    the entry
+     * @param oldValue the value the key was last updated for
+     */
+    private void rekey(int index, int oldValue) {
+        setHash(getHash() ^ key(index, oldValue) ^ key(index, state[index]));
+    }
+
+    /**
+     * Recomputes the Zobrist key from scratch, after the state has been reset or written wholesale.
+     */
+    private void rehash() {
+        long hash = key(FLAGS, state[FLAGS] & GHOSTS_ABSENT) ^ key(MAZE_INDEX, state[MAZE_INDEX]) ^ key(LEVEL_COUNT, state[LEVEL_COUNT]);
+        for (int index = PACMAN_NODE; index <= PACMAN_LIVES; index++) {
+            hash ^= key(index, state[index]);
+        }
+        for (int index = GHOSTS; index < GHOSTS + NUM_GHOSTS * GHOST_STRIDE; index++) {
+            hash ^= key(index, state[index]);
+        }
+        for (int index = PILLS; index < state.length; index++) {
+            hash ^= key(index, state[index]);
         }
+        setHash(hash);
+    }
+
+    private long getHash() {
+        return ((long) state[HASH] << 32) | (state[HASH + 1] & 0xFFFFFFFFL);
+    }
+
+    private void setHash(long hash) {
+        state[HASH] = (int) (hash >>> 32);
+        state[HASH + 1] = (int) hash;
+    }
+
+    //the key of an entry holding a value: mix64 is a bijection, so every (entry, value) pair gets its own key
+    private static long key(int index, int value) {
+        return mix64((((long) index << 32) | (value & 0xFFFFFFFFL)) + GOLDEN_GAMMA);
     }
 
     /**
@@ -328,15 +551,16 @@ public final class Game {
         }
         StringBuilder sb = new StringBuilder();
 
-        sb.append(mazeIndex + "," + totalTime + "," + score + "," + currentLevelTime + "," + levelCount + ","
-                + internalPacman.currentNodeIndex + "," + internalPacman.lastMoveMade + "," + internalPacman.numberOfLivesRemaining + "," + internalPacman.hasReceivedExtraLife + ",");
+        sb.append(state[MAZE_INDEX] + "," + state[TOTAL_TIME] + "," + state[SCORE] + "," + state[CURRENT_LEVEL_TIME] + "," + state[LEVEL_COUNT] + ","
+                + state[PACMAN_NODE] + "," + MOVES[state[PACMAN_LAST_MOVE]] + "," + state[PACMAN_LIVES] + "," + isSet(PACMAN_RECEIVED_EXTRA_LIFE) + ",");
 
-        for (Ghost ghost : ghosts.values()) {
-            sb.append(ghost.currentNodeIndex + "," + ghost.edibleTime + "," + ghost.lairTime + "," + ghost.lastMoveMade + ",");
+        for (int i = 0; i < NUM_GHOSTS; i++) {
+            int ghost = GHOSTS + i * GHOST_STRIDE;
+            sb.append(state[ghost + GHOST_NODE] + "," + state[ghost + GHOST_EDIBLE_TIME] + "," + state[ghost + GHOST_LAIR_TIME] + "," + MOVES[state[ghost + GHOST_LAST_MOVE]] + ",");
         }
 
         for (int i = 0; i < currentMaze.pillIndices.length; i++) {
-            if (pills.get(i)) {
+            if (isPillActive(i)) {
                 sb.append("1");
             } else {
                 sb.append("0");
@@ -346,7 +570,7 @@ public final class Game {
         sb.append(",");
 
         for (int i = 0; i < currentMaze.powerPillIndices.length; i++) {
-            if (powerPills.get(i)) {
+            if (isPowerPillActive(i)) {
                 sb.append("1");
             } else {
                 sb.append("0");
@@ -354,19 +578,19 @@ public final class Game {
         }
 
         sb.append(",");
-        sb.append(timeOfLastGlobalReversal);
+        sb.append(state[TIME_OF_LAST_GLOBAL_REVERSAL]);
         sb.append(",");
-        sb.append(pacmanWasEaten);
+        sb.append(isSet(PACMAN_WAS_EATEN));
         sb.append(",");
 
-        for (GHOST ghost : GHOST.values()) {
-            sb.append(ghostsEaten.get(ghost));
+        for (int i = 0; i < NUM_GHOSTS; i++) {
+            sb.append(isSet(GHOST_WAS_EATEN << i));
             sb.append(",");
         }
 
-        sb.append(pillWasEaten);
+        sb.append(isSet(PILL_WAS_EATEN));
         sb.append(",");
-        sb.append(powerPillWasEaten);
+        sb.append(isSet(POWER_PILL_WAS_EATEN));
 
         return sb.toString();
     }
@@ -383,54 +607,67 @@ public final class Game {
 
         int index = 0;
 
-        mazeIndex = Integer.parseInt(values[index++]);
-        totalTime = Integer.parseInt(values[index++]);
-        score = Integer.parseInt(values[index++]);
-        currentLevelTime = Integer.parseInt(values[index++]);
-        levelCount = Integer.parseInt(values[index++]);
+        setMaze(Integer.parseInt(values[index++]));
+        state[TOTAL_TIME] = Integer.parseInt(values[index++]);
+        state[SCORE] = Integer.parseInt(values[index++]);
+        state[CURRENT_LEVEL_TIME] = Integer.parseInt(values[index++]);
+        state[LEVEL_COUNT] = Integer.parseInt(values[index++]);
 
-        internalPacman = new PacMan(Integer.parseInt(values[index++]), MOVE.valueOf(values[index++]),
-                Integer.parseInt(values[index++]), Boolean.parseBoolean(values[index++]));
+        state[PACMAN_NODE] = Integer.parseInt(values[index++]);
+        state[PACMAN_LAST_MOVE] = MOVE.valueOf(values[index++]).ordinal();
+        state[PACMAN_LIVES] = Integer.parseInt(values[index++]);
+        setFlag(PACMAN_RECEIVED_EXTRA_LIFE, Boolean.parseBoolean(values[index++]));
 
-        ghosts = new EnumMap<>(GHOST.class);
-
-        for (GHOST ghostType : GHOST.values()) {
-            ghosts.put(ghostType, new Ghost(ghostType, Integer.parseInt(values[index++]), Integer.parseInt(values[index++]),
-                    Integer.parseInt(values[index++]), MOVE.valueOf(values[index++])));
+        for (int i = 0; i < NUM_GHOSTS; i++) {
+            int ghost = GHOSTS + i * GHOST_STRIDE;
+            state[ghost + GHOST_NODE] = Integer.parseInt(values[index++]);
+            state[ghost + GHOST_EDIBLE_TIME] = Integer.parseInt(values[index++]);
+            state[ghost + GHOST_LAIR_TIME] = Integer.parseInt(values[index++]);
+            state[ghost + GHOST_LAST_MOVE] = MOVE.valueOf(values[index++]).ordinal();
+            setFlag(GHOST_ABSENT << i, false);
         }
 
-        currentMaze = mazes[mazeIndex];
         setPills();
 
         for (int i = 0; i < values[index].length(); i++) {
-            if (values[index].charAt(i) == '1') {
-                pills.set(i);
-            } else {
-                pills.clear(i);
-            }
+            setBit(PILLS, i, values[index].charAt(i) == '1');
         }
 
         index++;
 
         for (int i = 0; i < values[index].length(); i++) {
-            if (values[index].charAt(i) == '1') {
-                powerPills.set(i);
-            } else {
-                powerPills.clear(i);
-            }
+            setBit(powerPillsOffset, i, values[index].charAt(i) == '1');
         }
 
-        timeOfLastGlobalReversal = Integer.parseInt(values[++index]);
-        pacmanWasEaten = Boolean.parseBoolean(values[++index]);
+        countPills();
+        rehash();
 
-        ghostsEaten = new EnumMap<>(GHOST.class);
+        state[TIME_OF_LAST_GLOBAL_REVERSAL] = Integer.parseInt(values[++index]);
+        setFlag(PACMAN_WAS_EATEN, Boolean.parseBoolean(values[++index]));
 
-        for (GHOST ghost : GHOST.values()) {
-            ghostsEaten.put(ghost, Boolean.parseBoolean(values[++index]));
+        for (int i = 0; i < NUM_GHOSTS; i++) {
+            setFlag(GHOST_WAS_EATEN << i, Boolean.parseBoolean(values[++index]));
         }
 
-        pillWasEaten = Boolean.parseBoolean(values[++index]);
-        powerPillWasEaten = Boolean.parseBoolean(values[++index]);
+        setFlag(PILL_WAS_EATEN, Boolean.parseBoolean(values[++index]));
+        setFlag(POWER_PILL_WAS_EATEN, Boolean.parseBoolean(values[++index]));
+    }
+
+    /**
+     * Recounts the active pills and power pills after the pill bits have been written directly.
+     */
+    private void countPills() {
+        int count = 0;
+        for (int i = PILLS; i < powerPillsOffset; i++) {
+            count += Integer.bitCount(state[i]);
+        }
+        state[ACTIVE_PILLS] = count;
+
+        count = 0;
+        for (int i = powerPillsOffset; i < state.length; i++) {
+            count += Integer.bitCount(state[i]);
+        }
+        state[ACTIVE_POWER_PILLS] = count;
     }
 
     /**
@@ -442,105 +679,671 @@ public final class Game {
      * Need to dissallow the forwarding of games that have PO enabled.
      * Then allow a copy of the game to be made with some information provided.
      *
-     * @param copyMessenger should the messenger be deep copied or not
-     * @return the game
+     * @param copyMessenger should the messenger be deep copied or not
+     * @return the game
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public Game copy(boolean copyMessenger) {
+        return copy(copyMessenger, true);
+    }
+
+    /**
+     * Makes a copy of the game without writing to the game, so that several threads can copy a game that none of
+     * them changes. Unlike copy(), the copy does not get a stream of its own: it draws the numbers the game would,
+     * so it should be reseeded when that matters.
+     *
+     * @return the game
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public Game copyWithoutSplit() {
+        return copy(false, false);
+    }
+
+    private Game copy(boolean copyMessenger, boolean split) {
+        Game copy = new Game(this.poType, this.sightLimit);
+
+        copy.seed = seed;
+        copy.useNextMoveTables = useNextMoveTables;
+        copy.currentMaze = currentMaze;
+        copy.visibility = visibility;
+        copy.powerPillsOffset = powerPillsOffset;
+        copy.state = new int[state.length];
+        System.arraycopy(state, 0, copy.state, 0, state.length);
+        //the copy gets its own stream, derived from this one without consuming any of its numbers
+        if (split) {
+            copy.setRngState(mix64(getRngState() + (++state[RNG_SPLITS]) * SPLIT_GAMMA));
+            copy.state[RNG_SPLITS] = 0;
+        }
+
+        copy.ghostsPresent = ghostsPresent;
+        copy.pillsPresent = pillsPresent;
+        copy.powerPillsPresent = powerPillsPresent;
+
+        copy.po = this.po;
+        copy.agent = this.agent;
+        if (hasMessaging()) {
+            copy.messenger = (copyMessenger) ? messenger.copy() : this.messenger;
+        }
+
+        return copy;
+    }
+
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public Game copy() {
+        return copy(false);
+    }
+
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public Game copy(GHOST ghost) {
+        return copy(ghost, false);
+    }
+
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public Game copy(GHOST ghost, boolean copyMessenger) {
+        Game game = copy(copyMessenger);
+        game.po = true;
+        game.agent = ghost.ordinal();
+        return game;
+    }
+
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public Game copy(int agent) {
+        Game game = copy();
+        if (agent == CLONE) {
+            return game;
+        }
+        game.po = true;
+        game.agent = agent;
+        return game;
+    }
+
+    /**
+     * Restarts the random number generator of the game from the seed given. The generator drives the
+     * global reversals of the ghosts and their random moves when they cannot continue, so two games in
+     * the same state that are reseeded alike will play out alike given the same moves.
+     * <p>
+     * Copies of a game derive their own stream from the game's generator, so a copy never shares numbers
+     * with its source and copying does not change the numbers the source will draw.
+     *
+     * @param seed The seed for the pseudo-random number generator
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public void reseed(long seed) {
+        this.seed = seed;
+        setRngState(seed);
+        state[RNG_SPLITS] = 0;
+    }
+
+    private long getRngState() {
+        return ((long) state[RNG] << 32) | (state[RNG + 1] & 0xFFFFFFFFL);
+    }
+
+    private void setRngState(long rngState) {
+        state[RNG] = (int) (rngState >>> 32);
+        state[RNG + 1] = (int) rngState;
+    }
+
+    private long nextLong() {
+        long rngState = getRngState() + GOLDEN_GAMMA;
+        setRngState(rngState);
+        return mix64(rngState);
+    }
+
+    private double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    private int nextInt(int bound) {
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Writes the dynamic state of the game into the buffer supplied. The buffer is only (re)allocated
+     * when it is too small for the current maze, so the same snapshot can be reused for every
+     * iteration of a search.
+     *
+     * @param buf The snapshot to fill
+     * @return the snapshot supplied
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public GameSnapshot snapshot(GameSnapshot buf) {
+        if (buf.state.length != state.length) {
+            buf.state = new int[state.length];
+        }
+        System.arraycopy(state, 0, buf.state, 0, state.length);
+
+        buf.ghostsPresent = ghostsPresent;
+        buf.pillsPresent = pillsPresent;
+        buf.powerPillsPresent = powerPillsPresent;
+        buf.po = po;
+        buf.beenBlanked = beenBlanked;
+        buf.agent = agent;
+
+        return buf;
+    }
+
+    /**
+     * Resets the game to the state held in the snapshot. The snapshot should have been taken from
+     * this game or from a game this game was copied from (or vice versa) as the PO type, sight limit
+     * and messenger are left untouched.
+     *
+     * @param buf The snapshot to restore
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public void restore(GameSnapshot buf) {
+        if (state.length != buf.state.length) {
+            state = new int[buf.state.length];
+        }
+        System.arraycopy(buf.state, 0, state, 0, state.length);
+        currentMaze = getMaze(state[MAZE_INDEX]);
+        powerPillsOffset = PILLS + words(currentMaze.pillIndices.length);
+
+        ghostsPresent = buf.ghostsPresent;
+        pillsPresent = buf.pillsPresent;
+        powerPillsPresent = buf.powerPillsPresent;
+        po = buf.po;
+        beenBlanked = buf.beenBlanked;
+        agent = buf.agent;
+    }
+
+    /**
+     * Resets the game given to the state of this game, as restoring a snapshot of this game would, but copying the
+     * state only once. Nothing is written to this game, its random number generator included, so several threads
+     * can copy the same game at once. The target draws the numbers this game would, so it should be reseeded when
+     * that matters. As with restore, the target should have been copied from this game or from the same source.
+     *
+     * @param target The game to reset
+     * @return the game supplied
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public Game copyInto(Game target) {
+        if (target.state.length != state.length) {
+            target.state = new int[state.length];
+        }
+        System.arraycopy(state, 0, target.state, 0, state.length);
+        target.currentMaze = currentMaze;
+        target.powerPillsOffset = powerPillsOffset;
+
+        target.ghostsPresent = ghostsPresent;
+        target.pillsPresent = pillsPresent;
+        target.powerPillsPresent = powerPillsPresent;
+        target.po = po;
+        target.beenBlanked = beenBlanked;
+        target.agent = agent;
+
+        return target;
+    }
+
+    private boolean canBeForwarded() {
+        return !po || beenBlanked;
+    }
+
+    /////////////////////////////////////////////////////////////////////////////
+    ///////////////////////////  Game-engine   //////////////////////////////////
+    /////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Central method that advances the game state using the moves supplied by
+     * the controllers. It first updates Ms Pac-Man, then the ghosts and then
+     * the general game logic.
+     *
+     * @param pacManMove The move supplied by the Ms Pac-Man controller
+     * @param ghostMoves The moves supplied by the ghosts controller
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public void advanceGame(MOVE pacManMove, Map<GHOST, MOVE> ghostMoves) {
+        if (!canBeForwarded()) {
+            return;
+        }
+        updatePacMan(pacManMove);
+        updateGhosts(ghostMoves);
+        updateGame();
+    }
+
+    /**
+     * Advances the game exactly like {@link #advanceGame(MOVE, Map)} but takes the moves in
+     * their packed form, so that no maps need to be built or boxed. This is meant for the inner
+     * loops of searches, where the game is advanced many times per decision.
+     *
+     * @param pacManMove The ordinal of the move supplied by the Ms Pac-Man controller
+     * @param ghostMoves The packed moves supplied by the ghosts controller, see {@link #packGhostMove(int, GHOST, MOVE)}
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public void advanceGame(int pacManMove, int ghostMoves) {
+        if (!canBeForwarded()) {
+            return;
+        }
+        updatePacMan(MOVES[pacManMove]);
+        if (ghostsPresent && !reverseGhosts(false)) {
+            _updateGhosts(ghostMoves);
+        }
+        updateGame();
+    }
+
+    /**
+     * Advances the game tick by tick with the moves of the policy until one of the stop conditions is met,
+     * the maximum number of ticks has been played or the game is over. This replaces loops that step a copy
+     * of the game with full controllers, e.g. to move the agents to their next junction when expanding a
+     * search tree, and allocates nothing itself.
+     *
+     * @param agents   The agents checked by StopCondition.JUNCTION
+     * @param stop     When to stop
+     * @param maxTicks The maximum number of ticks to play
+     * @param policy   Supplies the moves for every tick
+     * @param events   Filled with what happened during the call, may be null
+     * @return The number of ticks played
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public int advanceUntil(AgentSelector agents, StopCondition stop, int maxTicks, TickPolicy policy, TickEvents events) {
+        if (events != null) {
+            events.clear();
+        }
+        if (!canBeForwarded()) {
+            return 0;
+        }
+
+        int pacmanFrom = state[PACMAN_NODE];
+        //the nodes the ghosts start from, 16 bits each, which is plenty for the mazes
+        long ghostsFrom = 0;
+        for (int i = 0; i < NUM_GHOSTS; i++) {
+            ghostsFrom |= (long) (state[GHOSTS + i * GHOST_STRIDE + GHOST_NODE] & 0xFFFF) << (i * 16);
+        }
+
+        int ticks = 0;
+        while (ticks < maxTicks && !isSet(GAME_OVER)) {
+            int level = state[LEVEL_COUNT];
+            int score = state[SCORE];
+            int pacmanMove = policy.getPacmanMove(this);
+
+            advanceGame(pacmanMove == TickPolicy.FOLLOW_PATH ? followPath() : pacmanMove, policy.getGhostMoves(this));
+            ticks++;
+
+            int flags = state[FLAGS];
+            boolean levelChanged = state[LEVEL_COUNT] != level;
+
+            if (events != null) {
+                addTickEvents(events, levelChanged, score);
+            }
+
+            if ((stop.has(StopCondition.PILL_EATEN) && (flags & PILL_WAS_EATEN) != 0)
+                    || (stop.has(StopCondition.POWER_PILL_EATEN) && (flags & POWER_PILL_WAS_EATEN) != 0)
+                    || (stop.has(StopCondition.GHOST_EATEN) && (flags & (0xF * GHOST_WAS_EATEN)) != 0)
+                    || (stop.has(StopCondition.PACMAN_EATEN) && (flags & PACMAN_WAS_EATEN) != 0)
+                    || (stop.has(StopCondition.LEVEL_CHANGED) && levelChanged)
+                    || (stop.has(StopCondition.JUNCTION) && isAgentAtNewJunction(agents, pacmanFrom, ghostsFrom))) {
+                break;
+            }
+        }
+
+        return ticks;
+    }
+
+    private void addTickEvents(TickEvents events, boolean levelChanged, int scoreBefore) {
+        int flags = state[FLAGS];
+
+        events.ticks++;
+        events.score += state[SCORE] - scoreBefore;
+        if ((flags & PILL_WAS_EATEN) != 0) {
+            events.pillsEaten++;
+        }
+        if ((flags & POWER_PILL_WAS_EATEN) != 0) {
+            events.powerPillsEaten++;
+        }
+        events.ghostsEaten += Integer.bitCount(flags & (0xF * GHOST_WAS_EATEN));
+        if ((flags & PACMAN_WAS_EATEN) != 0) {
+            events.pacmanEaten++;
+        }
+        if (levelChanged) {
+            events.levelsCompleted++;
+        }
+    }
+
+    /**
+     * Advances the game by one macro step. The deciding agents follow their paths and the macro step ends
+     * when one of them reaches a junction. The other agents carry on as the engine moves them when given no
+     * move: Ms Pac-Man follows her path, taking the first way out at junctions where she cannot carry on,
+     * and the ghosts carry on or pick a random way out.
+     * <p>
+     * Apart from the global reversals all of this can be worked out ahead, so rather than playing every
+     * tick the number of ticks until the next interesting one is computed: a deciding agent reaching a
+     * junction, a ghost coming within EAT_DISTANCE of Ms Pac-Man, a ghost leaving the lair, Ms Pac-Man
+     * reaching a power pill or the last pill, or the end of the level. The game then jumps straight there,
+     * moving the agents and updating the pills, score and timers in bulk. The tick of the next global
+     * reversal is drawn from the geometric distribution, and that tick is played normally.
+     * <p>
+     * The resulting games are distributed as if the same moves had been played tick by tick, but are not
+     * identical to them since the random number generator is used differently. If nothing can be skipped
+     * a single tick is played with the moves described above, so callers that want to make the decisions
+     * of the deciding agents should check {@link #requiresAction()} first.
+     *
+     * @param deciding The agents whose junctions end the macro step
+     * @param maxTicks The maximum number of ticks to advance
+     * @param events   Filled with what happened during the call, may be null
+     * @return The number of ticks advanced
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public int advanceMacro(AgentSelector deciding, int maxTicks, TickEvents events) {
+        if (events != null) {
+            events.clear();
+        }
+        if (!canBeForwarded() || maxTicks <= 0) {
+            return 0;
+        }
+
+        int ticks = getSafeTicks(deciding, maxTicks);
+        boolean reversal = false;
+
+        if (ticks > 0 && ghostsPresent) {
+            //the number of ticks before the next global reversal; it happens on the one after
+            int untilReversal = (int) Math.min(Integer.MAX_VALUE, Math.floor(Math.log1p(-nextDouble()) / Math.log1p(-GHOST_REVERSAL)));
+            if (untilReversal < ticks) {
+                ticks = untilReversal;
+                reversal = true;
+            }
+        }
+
+        if (ticks > 0) {
+            int score = state[SCORE];
+            int pillsEaten = skipTicks(ticks);
+            if (events != null) {
+                events.ticks = ticks;
+                events.score = state[SCORE] - score;
+                events.pillsEaten = pillsEaten;
+            }
+        }
+
+        if (ticks == 0 || reversal) {
+            int level = state[LEVEL_COUNT];
+            int score = state[SCORE];
+
+            //a normal tick, in which the global reversal drawn above takes place
+            updatePacMan(MOVES[followPath()]);
+            if (ghostsPresent && !reverseGhosts(reversal)) {
+                _updateGhosts(NO_GHOST_MOVES);
+            }
+            updateGame();
+            ticks++;
+
+            if (events != null) {
+                addTickEvents(events, state[LEVEL_COUNT] != level, score);
+            }
+        }
+
+        return ticks;
+    }
+
+    /**
+     * Whether Ms Pac-Man is on a junction or any of the ghosts requires an action, i.e. whether the next
+     * tick involves a decision by one of the agents.
+     *
+     * @return The boolean answer to the question
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public boolean requiresAction() {
+        if (isJunction(state[PACMAN_NODE])) {
+            return true;
+        }
+        for (GHOST ghostType : GHOST_TYPES) {
+            if (isPresent(ghostType.ordinal()) && doesGhostRequireAction(ghostType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The number of ticks that advanceMacro can skip before anything but the agents following their paths
+     * can happen.
+     */
+    private int getSafeTicks(AgentSelector deciding, int maxTicks) {
+        int ticks = Math.min(maxTicks, LEVEL_LIMIT - 1 - state[CURRENT_LEVEL_TIME]);
+        int pacmanNode = state[PACMAN_NODE];
+
+        if (deciding.pacman && isJunction(pacmanNode)) {
+            return 0;
+        }
+
+        for (int i = 0; i < NUM_GHOSTS && ticks > 0; i++) {
+            int ghost = GHOSTS + i * GHOST_STRIDE;
+            if (!isPresent(i)) {
+                continue;
+            }
+
+            //ghosts and Ms Pac-Man close in on each other by at most two nodes per tick
+            int distance = getShortestPathDistance(pacmanNode, state[ghost + GHOST_NODE]);
+            if (distance != -1) {
+                ticks = Math.min(ticks, (distance - EAT_DISTANCE - 1) / 2);
+            }
+
+            if (!ghostsPresent) {
+                continue;
+            }
+            if (state[ghost + GHOST_LAIR_TIME] > 0) {
+                ticks = Math.min(ticks, state[ghost + GHOST_LAIR_TIME] - 1);
+            } else if ((deciding.ghosts & (1 << i)) != 0) {
+                if (state[ghost + GHOST_LAST_MOVE] == MOVE.NEUTRAL.ordinal()) {
+                    return 0;
+                }
+                //a ghost moves at most once per tick, so it cannot get past the next junction
+                int node = state[ghost + GHOST_NODE];
+                int move = state[ghost + GHOST_LAST_MOVE];
+                int steps = 0;
+                while (steps < ticks && !isJunction(node)) {
+                    move = nextMoveOnPath(node, move);
+                    node = currentMaze.neighbours[node * 4 + move];
+                    steps++;
+                }
+                ticks = steps;
+            }
+        }
+
+        //Ms Pac-Man moves every tick: stop before the next power pill or the last pill
+        int pills = state[ACTIVE_PILLS] + state[ACTIVE_POWER_PILLS];
+        int node = pacmanNode;
+        int move = state[PACMAN_LAST_MOVE];
+        for (int steps = 0; steps < ticks; steps++) {
+            move = nextMoveOnPath(node, move);
+            node = currentMaze.neighbours[node * 4 + move];
+
+            Node next = currentMaze.graph[node];
+            if (next.powerPillIndex >= 0 && isPowerPillActive(next.powerPillIndex)) {
+                return steps;
+            }
+            if (next.pillIndex >= 0 && isPillActive(next.pillIndex) && --pills == 0) {
+                return steps;
+            }
+            if (deciding.pacman && currentMaze.junctions[node] != 0) {
+                return steps + 1;
+            }
+        }
+
+        return Math.max(ticks, 0);
+    }
+
+    /**
+     * Plays the number of ticks given in bulk, which getSafeTicks must have allowed. The entries are
+     * written directly and the Zobrist key is brought up to date once at the end.
+     *
+     * @return the number of pills eaten
      */
-    @SuppressWarnings({"WeakerAccess", "unused"})
-    public Game copy(boolean copyMessenger) {
-        Game copy = new Game(this.poType, this.sightLimit);
+    private int skipTicks(int ticks) {
+        int pillsEaten = 0;
+        boolean pillWasEaten = false;
+        int pacmanNode = state[PACMAN_NODE];
+        int pacmanMove = state[PACMAN_LAST_MOVE];
 
-        copy.seed = seed;
-        copy.rnd = new Random();
-        copy.currentMaze = currentMaze;
-        copy.pills = (BitSet) pills.clone();
-        copy.powerPills = (BitSet) powerPills.clone();
-        copy.mazeIndex = mazeIndex;
-        copy.levelCount = levelCount;
-        copy.currentLevelTime = currentLevelTime;
-        copy.totalTime = totalTime;
-        copy.score = score;
-        copy.ghostEatMultiplier = ghostEatMultiplier;
-        copy.gameOver = gameOver;
-        copy.timeOfLastGlobalReversal = timeOfLastGlobalReversal;
-        copy.pacmanWasEaten = pacmanWasEaten;
-        copy.pillWasEaten = pillWasEaten;
-        copy.powerPillWasEaten = powerPillWasEaten;
-        copy.internalPacman = internalPacman.copy();
+        for (int t = 0; t < ticks; t++) {
+            state[PACMAN_LAST_MOVE] = nextMoveOnPath(state[PACMAN_NODE], state[PACMAN_LAST_MOVE]);
+            state[PACMAN_NODE] = currentMaze.neighbours[state[PACMAN_NODE] * 4 + state[PACMAN_LAST_MOVE]];
 
-        copy.ghostsPresent = ghostsPresent;
-        copy.pillsPresent = pillsPresent;
-        copy.powerPillsPresent = powerPillsPresent;
+            int pillIndex = currentMaze.graph[state[PACMAN_NODE]].pillIndex;
+            pillWasEaten = pillIndex >= 0 && isPillActive(pillIndex);
+            if (pillWasEaten) {
+                state[SCORE] += PILL;
+                setBit(PILLS, pillIndex, false);
+                state[ACTIVE_PILLS]--;
+                pillsEaten++;
+            }
+        }
+        rekey(PACMAN_NODE, pacmanNode);
+        rekey(PACMAN_LAST_MOVE, pacmanMove);
 
-        copy.ghostsEaten = new EnumMap<>(GHOST.class);
-        copy.ghosts = new EnumMap<>(GHOST.class);
+        for (int i = 0; i < NUM_GHOSTS; i++) {
+            int ghost = GHOSTS + i * GHOST_STRIDE;
+            if (!isPresent(i)) {
+                continue;
+            }
+            int edibleTime = state[ghost + GHOST_EDIBLE_TIME];
 
-        for (GHOST ghostType : GHOST.values()) {
-            copy.ghosts.put(ghostType, ghosts.get(ghostType).copy());
-            copy.ghostsEaten.put(ghostType, ghostsEaten.get(ghostType));
+            if (ghostsPresent) {
+                if (state[ghost + GHOST_LAIR_TIME] > 0) {
+                    put(ghost + GHOST_LAIR_TIME, state[ghost + GHOST_LAIR_TIME] - ticks);
+                } else {
+                    //edible ghosts stand still on the ticks their edible time is a multiple of GHOST_SPEED_REDUCTION
+                    int edibleTicks = Math.min(ticks, edibleTime);
+                    int moves = ticks - (edibleTime / GHOST_SPEED_REDUCTION - (edibleTime - edibleTicks) / GHOST_SPEED_REDUCTION);
+                    int ghostNode = state[ghost + GHOST_NODE];
+                    int ghostMove = state[ghost + GHOST_LAST_MOVE];
+
+                    for (int m = 0; m < moves; m++) {
+                        int node = state[ghost + GHOST_NODE];
+                        int lastMoveMade = state[ghost + GHOST_LAST_MOVE];
+                        if (getNeighbourIndex(node, lastMoveMade) == -1) {
+                            //as in checkGhostDir when the ghost is given no move
+                            int possibleMoves = currentMaze.moveMasks[node * NUM_MOVES + lastMoveMade];
+                            int count = Integer.bitCount(possibleMoves);
+                            lastMoveMade = nthMove(possibleMoves, count == 1 ? 0 : nextInt(count));
+                            state[ghost + GHOST_LAST_MOVE] = lastMoveMade;
+                        }
+                        state[ghost + GHOST_NODE] = currentMaze.neighbours[node * 4 + lastMoveMade];
+                    }
+                    rekey(ghost + GHOST_NODE, ghostNode);
+                    rekey(ghost + GHOST_LAST_MOVE, ghostMove);
+                }
+            }
+            if (edibleTime > 0) {
+                put(ghost + GHOST_EDIBLE_TIME, Math.max(0, edibleTime - ticks));
+            }
         }
 
-        copy.po = this.po;
-        copy.agent = this.agent;
-        if (hasMessaging()) {
-            copy.messenger = (copyMessenger) ? messenger.copy() : this.messenger;
+        state[FLAGS] &= ~(PACMAN_WAS_EATEN | PILL_WAS_EATEN | POWER_PILL_WAS_EATEN | (0xF * GHOST_WAS_EATEN));
+        if (pillWasEaten) {
+            state[FLAGS] |= PILL_WAS_EATEN;
         }
 
-        return copy;
+        updatePacManExtraLife();
+        state[TOTAL_TIME] += ticks;
+        state[CURRENT_LEVEL_TIME] += ticks;
+
+        return pillsEaten;
     }
 
-    @SuppressWarnings({"WeakerAccess", "unused"})
-    public Game copy() {
-        return copy(false);
+    /**
+     * The move an agent makes on its own when it is not at a junction: carry on if it can, otherwise take
+     * the only way that does not reverse it.
+     */
+    private int nextMoveOnPath(int nodeIndex, int lastMove) {
+        if (getNeighbourIndex(nodeIndex, lastMove) != -1) {
+            return lastMove;
+        }
+        return Integer.numberOfTrailingZeros(currentMaze.moveMasks[nodeIndex * NUM_MOVES + lastMove]);
     }
 
-    @SuppressWarnings({"WeakerAccess", "unused"})
-    public Game copy(GHOST ghost) {
-        return copy(ghost, false);
+    /**
+     * The n-th move (counting from 0 in MOVE order) of a mask returned by getPossibleMovesMask.
+     */
+    private static int nthMove(int mask, int n) {
+        for (; n > 0; n--) {
+            mask &= mask - 1;
+        }
+        return Integer.numberOfTrailingZeros(mask);
     }
 
-    @SuppressWarnings({"WeakerAccess", "unused"})
-    public Game copy(GHOST ghost, boolean copyMessenger) {
-        Game game = copy(copyMessenger);
-        game.po = true;
-        game.agent = ghost.ordinal();
-        return game;
+    private boolean isAgentAtNewJunction(AgentSelector agents, int pacmanFrom, long ghostsFrom) {
+        if (agents.pacman && state[PACMAN_NODE] != pacmanFrom && isJunction(state[PACMAN_NODE])) {
+            return true;
+        }
+        for (int i = 0; i < NUM_GHOSTS; i++) {
+            if ((agents.ghosts & (1 << i)) != 0 && isPresent(i)) {
+                int node = state[GHOSTS + i * GHOST_STRIDE + GHOST_NODE];
+                if (node != (int) ((ghostsFrom >>> (i * 16)) & 0xFFFF) && isJunction(node)) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
-    @SuppressWarnings({"WeakerAccess", "unused"})
-    public Game copy(int agent) {
-        Game game = copy();
-        if (agent == CLONE) {
-            return game;
+    /**
+     * The move that keeps Ms Pac-Man on her path, see TickPolicy.FOLLOW_PATH.
+     *
+     * @return the ordinal of the move
+     */
+    private int followPath() {
+        int node = state[PACMAN_NODE];
+        int lastMoveMade = state[PACMAN_LAST_MOVE];
+
+        if (getNeighbourIndex(node, lastMoveMade) != -1) {
+            return lastMoveMade;
         }
-        game.po = true;
-        game.agent = agent;
-        return game;
+        int moves = currentMaze.moveMasks[node * NUM_MOVES + lastMoveMade];
+        return moves != 0 ? Integer.numberOfTrailingZeros(moves) : MOVE.NEUTRAL.ordinal();
     }
 
-    private boolean canBeForwarded() {
-        return !po || beenBlanked;
+    /**
+     * The node the move given by its ordinal leads to, or -1 (always for NEUTRAL).
+     */
+    private int getNeighbourIndex(int nodeIndex, int move) {
+        return move < 4 ? currentMaze.neighbours[nodeIndex * 4 + move] : -1;
     }
 
-    /////////////////////////////////////////////////////////////////////////////
-    ///////////////////////////  Game-engine   //////////////////////////////////
-    /////////////////////////////////////////////////////////////////////////////
+    /**
+     * Sets the move of a single ghost in a packed set of ghost moves. Start from NO_GHOST_MOVES;
+     * ghosts without a move are treated as if they had been given MOVE.NEUTRAL.
+     *
+     * @param ghostMoves The packed ghost moves
+     * @param ghostType  The ghost
+     * @param move       The move of the ghost, null for no move
+     * @return The packed ghost moves with the move of the ghost replaced
+     */
+    public static int packGhostMove(int ghostMoves, GHOST ghostType, MOVE move) {
+        int shift = ghostType.ordinal() * GHOST_MOVE_BITS;
+        int value = move == null ? NO_GHOST_MOVE : move.ordinal();
+        return (ghostMoves & ~(NO_GHOST_MOVE << shift)) | (value << shift);
+    }
 
     /**
-     * Central method that advances the game state using the moves supplied by
-     * the controllers. It first updates Ms Pac-Man, then the ghosts and then
-     * the general game logic.
+     * Gets the move of a single ghost from a packed set of ghost moves.
      *
-     * @param pacManMove The move supplied by the Ms Pac-Man controller
-     * @param ghostMoves The moves supplied by the ghosts controller
+     * @param ghostMoves The packed ghost moves
+     * @param ghostType  The ghost
+     * @return The move of the ghost, null if it has none
      */
-    @SuppressWarnings({"WeakerAccess", "unused"})
-    public void advanceGame(MOVE pacManMove, Map<GHOST, MOVE> ghostMoves) {
-        if (!canBeForwarded()) {
-            return;
+    public static MOVE unpackGhostMove(int ghostMoves, GHOST ghostType) {
+        int value = (ghostMoves >>> (ghostType.ordinal() * GHOST_MOVE_BITS)) & NO_GHOST_MOVE;
+        return value == NO_GHOST_MOVE ? null : MOVES[value];
+    }
+
+    /**
+     * Packs the moves of a map of ghost moves.
+     *
+     * @param ghostMoves The ghost moves, may be null
+     * @return The packed ghost moves
+     */
+    public static int packGhostMoves(Map<GHOST, MOVE> ghostMoves) {
+        int packed = NO_GHOST_MOVES;
+        if (ghostMoves != null) {
+            for (Entry<GHOST, MOVE> entry : ghostMoves.entrySet()) {
+                packed = packGhostMove(packed, entry.getKey(), entry.getValue());
+            }
         }
-        updatePacMan(pacManMove);
-        updateGhosts(ghostMoves);
-        updateGame();
+        return packed;
     }
 
     @SuppressWarnings({"WeakerAccess", "unused"})
@@ -570,7 +1373,7 @@ public final class Game {
         }
         updatePacMan(pacManMove);
 
-        if (powerPillWasEaten) {
+        if (isSet(POWER_PILL_WAS_EATEN)) {
             updateGhostsWithForcedReverse(ghostMoves);
         } else {
             updateGhostsWithoutReverse(ghostMoves);
@@ -609,7 +1412,7 @@ public final class Game {
         }
         Map<GHOST, MOVE> completedGhostMoves = completeGhostMoves(ghostMoves);
 
-        if (!reverseGhosts(completedGhostMoves, false)) {
+        if (!reverseGhosts(false)) {
             _updateGhosts(completedGhostMoves);
         }
     }
@@ -633,7 +1436,7 @@ public final class Game {
         if (!ghostsPresent) {
             return;
         }
-        reverseGhosts(completeGhostMoves(ghostMoves), true);
+        reverseGhosts(true);
     }
 
     /**
@@ -650,8 +1453,8 @@ public final class Game {
         updateLairTimes();
         updatePacManExtraLife();
 
-        totalTime++;
-        currentLevelTime++;
+        state[TOTAL_TIME]++;
+        state[CURRENT_LEVEL_TIME]++;
 
         checkLevelState();                            //check if level/game is over
         if (messenger != null) {
@@ -685,10 +1488,10 @@ public final class Game {
         }
 
         if (updateTotalTime) {
-            totalTime++;
+            state[TOTAL_TIME]++;
         }
         if (updateLevelTime) {
-            currentLevelTime++;
+            state[CURRENT_LEVEL_TIME]++;
         }
 
         checkLevelState();                            //check if level/game is over
@@ -704,10 +1507,12 @@ public final class Game {
         if (!ghostsPresent) {
             return;
         }
-        for (Ghost ghost : ghosts.values()) {
-            if (ghost.lairTime > 0) {
-                if (--ghost.lairTime == 0) {
-                    ghost.currentNodeIndex = currentMaze.initialGhostNodeIndex;
+        for (int i = 0; i < NUM_GHOSTS; i++) {
+            int ghost = GHOSTS + i * GHOST_STRIDE;
+            if (isPresent(i) && state[ghost + GHOST_LAIR_TIME] > 0) {
+                put(ghost + GHOST_LAIR_TIME, state[ghost + GHOST_LAIR_TIME] - 1);
+                if (state[ghost + GHOST_LAIR_TIME] == 0) {
+                    put(ghost + GHOST_NODE, currentMaze.initialGhostNodeIndex);
                 }
             }
         }
@@ -717,10 +1522,10 @@ public final class Game {
      * _update pac man extra life.
      */
     private void updatePacManExtraLife() {
-        if (!internalPacman.hasReceivedExtraLife && score >= EXTRA_LIFE_SCORE)    //award 1 extra life at 10000 points
+        if (!isSet(PACMAN_RECEIVED_EXTRA_LIFE) && state[SCORE] >= EXTRA_LIFE_SCORE)    //award 1 extra life at 10000 points
         {
-            internalPacman.hasReceivedExtraLife = true;
-            internalPacman.numberOfLivesRemaining++;
+            state[FLAGS] |= PACMAN_RECEIVED_EXTRA_LIFE;
+            put(PACMAN_LIVES, state[PACMAN_LIVES] + 1);
         }
     }
 
@@ -730,9 +1535,11 @@ public final class Game {
      * @param move the move
      */
     private void _updatePacMan(MOVE move) {
-        internalPacman.lastMoveMade = correctPacManDir(move);
-        internalPacman.currentNodeIndex = internalPacman.lastMoveMade == MOVE.NEUTRAL ? internalPacman.currentNodeIndex :
-                currentMaze.graph[internalPacman.currentNodeIndex].neighbourhood.get(internalPacman.lastMoveMade);
+        MOVE lastMoveMade = correctPacManDir(move);
+        put(PACMAN_LAST_MOVE, lastMoveMade.ordinal());
+        if (lastMoveMade != MOVE.NEUTRAL) {
+            put(PACMAN_NODE, currentMaze.neighbours[state[PACMAN_NODE] * 4 + lastMoveMade.ordinal()]);
+        }
     }
 
     /**
@@ -742,15 +1549,16 @@ public final class Game {
      * @return the mOVE
      */
     private MOVE correctPacManDir(MOVE direction) {
-        Node node = currentMaze.graph[internalPacman.currentNodeIndex];
+        int node = state[PACMAN_NODE];
 
         //direction is correct, return it
-        if (node.neighbourhood.containsKey(direction)) {
+        if (getNeighbourIndex(node, direction.ordinal()) != -1) {
             return direction;
         } else {
             //try to use previous direction (i.e., continue in the same direction)
-            if (node.neighbourhood.containsKey(internalPacman.lastMoveMade)) {
-                return internalPacman.lastMoveMade;
+            MOVE lastMoveMade = MOVES[state[PACMAN_LAST_MOVE]];
+            if (getNeighbourIndex(node, lastMoveMade.ordinal()) != -1) {
+                return lastMoveMade;
                 //else stay put
             } else {
                 return MOVE.NEUTRAL;
@@ -759,22 +1567,46 @@ public final class Game {
     }
 
     /**
-     * _update ghosts.
+     * _update ghosts. The moves the ghosts actually made are written back into the map.
      *
      * @param moves the moves
      */
     private void _updateGhosts(Map<GHOST, MOVE> moves) {
-        for (Entry<GHOST, MOVE> entry : moves.entrySet()) {
-            Ghost ghost = ghosts.get(entry.getKey());
-
-            if (ghost.lairTime == 0) {
-                if (ghost.edibleTime == 0 || ghost.edibleTime % GHOST_SPEED_REDUCTION != 0) {
-                    ghost.lastMoveMade = checkGhostDir(ghost, entry.getValue());
-                    moves.put(entry.getKey(), ghost.lastMoveMade);
-                    ghost.currentNodeIndex = currentMaze.graph[ghost.currentNodeIndex].neighbourhood.get(ghost.lastMoveMade);
+        int made = _updateGhosts(packGhostMoves(moves));
+
+        for (int i = 0; i < NUM_GHOSTS; i++) {
+            MOVE move = unpackGhostMove(made, GHOST_TYPES[i]);
+            if (move != null) {
+                moves.put(GHOST_TYPES[i], move);
+            }
+        }
+    }
+
+    /**
+     * _update ghosts.
+     *
+     * @param moves the packed moves
+     * @return the packed moves the ghosts actually made
+     */
+    private int _updateGhosts(int moves) {
+        int made = NO_GHOST_MOVES;
+
+        for (int i = 0; i < NUM_GHOSTS; i++) {
+            int ghost = GHOSTS + i * GHOST_STRIDE;
+
+            if (isPresent(i) && state[ghost + GHOST_LAIR_TIME] == 0) {
+                int edibleTime = state[ghost + GHOST_EDIBLE_TIME];
+                if (edibleTime == 0 || edibleTime % GHOST_SPEED_REDUCTION != 0) {
+                    int move = (moves >>> (i * GHOST_MOVE_BITS)) & NO_GHOST_MOVE;
+                    MOVE lastMoveMade = checkGhostDir(ghost, move == NO_GHOST_MOVE ? MOVE.NEUTRAL : MOVES[move]);
+                    put(ghost + GHOST_LAST_MOVE, lastMoveMade.ordinal());
+                    made = packGhostMove(made, GHOST_TYPES[i], lastMoveMade);
+                    put(ghost + GHOST_NODE, currentMaze.neighbours[state[ghost + GHOST_NODE] * 4 + lastMoveMade.ordinal()]);
                 }
             }
         }
+
+        return made;
     }
 
     private Map<GHOST, MOVE> completeGhostMoves(Map<GHOST, MOVE> moves) {
@@ -782,15 +1614,17 @@ public final class Game {
         if (ghostMoves == null) {
             ghostMoves = new EnumMap<>(GHOST.class);
 
-            for (Map.Entry<GHOST, Ghost> entry : ghosts.entrySet()) {
-                ghostMoves.put(entry.getKey(), entry.getValue().lastMoveMade);
+            for (int i = 0; i < NUM_GHOSTS; i++) {
+                if (isPresent(i)) {
+                    ghostMoves.put(GHOST_TYPES[i], MOVES[state[GHOSTS + i * GHOST_STRIDE + GHOST_LAST_MOVE]]);
+                }
             }
         }
 
         if (ghostMoves.size() < NUM_GHOSTS) {
-            for (GHOST ghostType : ghosts.keySet()) {
-                if (!ghostMoves.containsKey(ghostType)) {
-                    ghostMoves.put(ghostType, MOVE.NEUTRAL);
+            for (int i = 0; i < NUM_GHOSTS; i++) {
+                if (isPresent(i) && !ghostMoves.containsKey(GHOST_TYPES[i])) {
+                    ghostMoves.put(GHOST_TYPES[i], MOVE.NEUTRAL);
                 }
             }
         }
@@ -801,23 +1635,24 @@ public final class Game {
     /**
      * _check ghost dir.
      *
-     * @param ghost     the ghost
+     * @param ghost     the offset of the ghost in the state block
      * @param direction the direction
      * @return the mOVE
      */
-    private MOVE checkGhostDir(Ghost ghost, MOVE direction) {
+    private MOVE checkGhostDir(int ghost, MOVE direction) {
         //Gets the neighbours of the node with the node that would correspond to reverse removed
-        Node node = currentMaze.graph[ghost.currentNodeIndex];
+        int node = state[ghost + GHOST_NODE];
+        MOVE lastMoveMade = MOVES[state[ghost + GHOST_LAST_MOVE]];
+        int moves = currentMaze.moveMasks[node * NUM_MOVES + lastMoveMade.ordinal()];
 
         //The direction is possible and not opposite to the previous direction of that ghost
-        if (node.neighbourhood.containsKey(direction) && direction != ghost.lastMoveMade.opposite()) {
+        if ((moves & (1 << direction.ordinal())) != 0) {
             return direction;
         } else {
-            if (node.neighbourhood.containsKey(ghost.lastMoveMade)) {
-                return ghost.lastMoveMade;
+            if (getNeighbourIndex(node, lastMoveMade.ordinal()) != -1) {
+                return lastMoveMade;
             } else {
-                MOVE[] moves = node.allPossibleMoves.get(ghost.lastMoveMade);
-                return moves[rnd.nextInt(moves.length)];
+                return MOVES[nthMove(moves, nextInt(Integer.bitCount(moves)))];
             }
         }
     }
@@ -826,14 +1661,15 @@ public final class Game {
      * _eat pill.
      */
     private void eatPill() {
-        pillWasEaten = false;
+        state[FLAGS] &= ~PILL_WAS_EATEN;
 
-        int pillIndex = currentMaze.graph[internalPacman.currentNodeIndex].pillIndex;
+        int pillIndex = currentMaze.graph[state[PACMAN_NODE]].pillIndex;
 
-        if (pillIndex >= 0 && pills.get(pillIndex)) {
-            score += PILL;
-            pills.clear(pillIndex);
-            pillWasEaten = true;
+        if (pillIndex >= 0 && isPillActive(pillIndex)) {
+            state[SCORE] += PILL;
+            setBit(PILLS, pillIndex, false);
+            state[ACTIVE_PILLS]--;
+            state[FLAGS] |= PILL_WAS_EATEN;
         }
     }
 
@@ -841,46 +1677,52 @@ public final class Game {
      * _eat power pill.
      */
     private void eatPowerPill() {
-        powerPillWasEaten = false;
+        state[FLAGS] &= ~POWER_PILL_WAS_EATEN;
 
-        int powerPillIndex = currentMaze.graph[internalPacman.currentNodeIndex].powerPillIndex;
+        int powerPillIndex = currentMaze.graph[state[PACMAN_NODE]].powerPillIndex;
 
-        if (powerPillIndex >= 0 && powerPills.get(powerPillIndex)) {
-            score += POWER_PILL;
-            ghostEatMultiplier = 1;
-            powerPills.clear(powerPillIndex);
+        if (powerPillIndex >= 0 && isPowerPillActive(powerPillIndex)) {
+            state[SCORE] += POWER_PILL;
+            state[GHOST_EAT_MULTIPLIER] = 1;
+            setBit(powerPillsOffset, powerPillIndex, false);
+            state[ACTIVE_POWER_PILLS]--;
 
-            int newEdibleTime = (int) (EDIBLE_TIME * (Math.pow(EDIBLE_TIME_REDUCTION, levelCount % LEVEL_RESET_REDUCTION)));
+            int newEdibleTime = (int) (EDIBLE_TIME * (Math.pow(EDIBLE_TIME_REDUCTION, state[LEVEL_COUNT] % LEVEL_RESET_REDUCTION)));
 
-            for (Ghost ghost : ghosts.values()) {
-                if (ghost.lairTime == 0) {
-                    ghost.edibleTime = newEdibleTime;
+            for (int i = 0; i < NUM_GHOSTS; i++) {
+                int ghost = GHOSTS + i * GHOST_STRIDE;
+                if (!isPresent(i)) {
+                    continue;
+                }
+                if (state[ghost + GHOST_LAIR_TIME] == 0) {
+                    put(ghost + GHOST_EDIBLE_TIME, newEdibleTime);
                 } else {
-                    ghost.edibleTime = 0;
+                    put(ghost + GHOST_EDIBLE_TIME, 0);
                 }
             }
 
-            powerPillWasEaten = true;
+            state[FLAGS] |= POWER_PILL_WAS_EATEN;
         }
     }
 
-    private boolean reverseGhosts(Map<GHOST, MOVE> moves, boolean force) {
+    private boolean reverseGhosts(boolean force) {
         boolean reversed = false;
         boolean globalReverse = false;
 
-        if (rnd.nextDouble() < GHOST_REVERSAL) {
+        if (nextDouble() < GHOST_REVERSAL) {
             globalReverse = true;
         }
 
-        for (Entry<GHOST, MOVE> entry : moves.entrySet()) {
-            Ghost ghost = ghosts.get(entry.getKey());
+        for (int i = 0; i < NUM_GHOSTS; i++) {
+            int ghost = GHOSTS + i * GHOST_STRIDE;
 
-            if (currentLevelTime > 1 && ghost.lairTime == 0 && ghost.lastMoveMade != MOVE.NEUTRAL) {
-                if (force || (powerPillWasEaten || globalReverse)) {
-                    ghost.lastMoveMade = ghost.lastMoveMade.opposite();
-                    ghost.currentNodeIndex = currentMaze.graph[ghost.currentNodeIndex].neighbourhood.get(ghost.lastMoveMade);
+            if (isPresent(i) && state[CURRENT_LEVEL_TIME] > 1 && state[ghost + GHOST_LAIR_TIME] == 0 && state[ghost + GHOST_LAST_MOVE] != MOVE.NEUTRAL.ordinal()) {
+                if (force || (isSet(POWER_PILL_WAS_EATEN) || globalReverse)) {
+                    MOVE lastMoveMade = MOVES[state[ghost + GHOST_LAST_MOVE]].opposite();
+                    put(ghost + GHOST_LAST_MOVE, lastMoveMade.ordinal());
+                    put(ghost + GHOST_NODE, currentMaze.neighbours[state[ghost + GHOST_NODE] * 4 + lastMoveMade.ordinal()]);
                     reversed = true;
-                    timeOfLastGlobalReversal = totalTime;
+                    state[TIME_OF_LAST_GLOBAL_REVERSAL] = state[TOTAL_TIME];
                 }
             }
         }
@@ -892,33 +1734,33 @@ public final class Game {
      * feast.
      */
     private void feast() {
-        pacmanWasEaten = false;
+        state[FLAGS] &= ~(PACMAN_WAS_EATEN | (0xF * GHOST_WAS_EATEN));
 
-        for (GHOST ghost : ghosts.keySet()) {
-            ghostsEaten.put(ghost, false);
-        }
-
-        for (Ghost ghost : ghosts.values()) {
-            int distance = getShortestPathDistance(internalPacman.currentNodeIndex, ghost.currentNodeIndex);
+        for (int i = 0; i < NUM_GHOSTS; i++) {
+            int ghost = GHOSTS + i * GHOST_STRIDE;
+            if (!isPresent(i)) {
+                continue;
+            }
+            int distance = getShortestPathDistance(state[PACMAN_NODE], state[ghost + GHOST_NODE]);
 
             if (distance <= EAT_DISTANCE && distance != -1) {
-                if (ghost.edibleTime > 0)                                    //pac-man eats ghost
+                if (state[ghost + GHOST_EDIBLE_TIME] > 0)                                    //pac-man eats ghost
                 {
-                    score += GHOST_EAT_SCORE * ghostEatMultiplier;
-                    ghostEatMultiplier *= 2;
-                    ghost.edibleTime = 0;
-                    ghost.lairTime = (int) (COMMON_LAIR_TIME * (Math.pow(LAIR_REDUCTION, levelCount % LEVEL_RESET_REDUCTION)));
-                    ghost.currentNodeIndex = currentMaze.lairNodeIndex;
-                    ghost.lastMoveMade = MOVE.NEUTRAL;
-
-                    ghostsEaten.put(ghost.type, true);
+                    state[SCORE] += GHOST_EAT_SCORE * state[GHOST_EAT_MULTIPLIER];
+                    state[GHOST_EAT_MULTIPLIER] *= 2;
+                    put(ghost + GHOST_EDIBLE_TIME, 0);
+                    put(ghost + GHOST_LAIR_TIME, (int) (COMMON_LAIR_TIME * (Math.pow(LAIR_REDUCTION, state[LEVEL_COUNT] % LEVEL_RESET_REDUCTION))));
+                    put(ghost + GHOST_NODE, currentMaze.lairNodeIndex);
+                    put(ghost + GHOST_LAST_MOVE, MOVE.NEUTRAL.ordinal());
+
+                    state[FLAGS] |= GHOST_WAS_EATEN << i;
                 } else                                                    //ghost eats pac-man
                 {
-                    internalPacman.numberOfLivesRemaining--;
-                    pacmanWasEaten = true;
+                    put(PACMAN_LIVES, state[PACMAN_LIVES] - 1);
+                    state[FLAGS] |= PACMAN_WAS_EATEN;
 
-                    if (internalPacman.numberOfLivesRemaining <= 0) {
-                        gameOver = true;
+                    if (state[PACMAN_LIVES] <= 0) {
+                        state[FLAGS] |= GAME_OVER;
                     } else {
                         levelReset();
                     }
@@ -927,15 +1769,16 @@ public final class Game {
                 }
             }
         }
-        for (Ghost ghost : ghosts.values()) {
-            if (ghost.edibleTime > 0) {
-                ghost.edibleTime--;
+        for (int i = 0; i < NUM_GHOSTS; i++) {
+            int ghost = GHOSTS + i * GHOST_STRIDE;
+            if (isPresent(i) && state[ghost + GHOST_EDIBLE_TIME] > 0) {
+                put(ghost + GHOST_EDIBLE_TIME, state[ghost + GHOST_EDIBLE_TIME] - 1);
             }
         }
     }
 
     public void empowerGhostEatScore() {
-        ghostEatMultiplier = 4;
+        state[GHOST_EAT_MULTIPLIER] = 4;
     }
 
     /**
@@ -949,7 +1792,7 @@ public final class Game {
 //        }
         //if all pills have been eaten or the time is up...
 //        else
-        if ((pills.isEmpty() && powerPills.isEmpty()) || currentLevelTime >= LEVEL_LIMIT) {
+        if ((state[ACTIVE_PILLS] == 0 && state[ACTIVE_POWER_PILLS] == 0) || state[CURRENT_LEVEL_TIME] >= LEVEL_LIMIT) {
             newLevelReset();
         }
     }
@@ -965,7 +1808,7 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public boolean wasPacManEaten() {
-        return pacmanWasEaten;
+        return isSet(PACMAN_WAS_EATEN);
     }
 
     /**
@@ -976,14 +1819,14 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public boolean wasGhostEaten(GHOST ghost) {
-        return ghostsEaten.get(ghost);
+        return isSet(GHOST_WAS_EATEN << ghost.ordinal());
     }
 
     @SuppressWarnings({"WeakerAccess", "unused"})
     public int getNumGhostsEaten() {
         int count = 0;
-        for (GHOST ghost : ghosts.keySet()) {
-            if (ghostsEaten.get(ghost)) {
+        for (int i = 0; i < NUM_GHOSTS; i++) {
+            if (isPresent(i) && isSet(GHOST_WAS_EATEN << i)) {
                 count++;
             }
         }
@@ -998,7 +1841,7 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public boolean wasPillEaten() {
-        return pillWasEaten;
+        return isSet(PILL_WAS_EATEN);
     }
 
     /**
@@ -1008,7 +1851,7 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public boolean wasPowerPillEaten() {
-        return powerPillWasEaten;
+        return isSet(POWER_PILL_WAS_EATEN);
     }
 
     /**
@@ -1018,7 +1861,7 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public int getTimeOfLastGlobalReversal() {
-        return timeOfLastGlobalReversal;
+        return state[TIME_OF_LAST_GLOBAL_REVERSAL];
     }
 
     /**
@@ -1029,7 +1872,7 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public boolean gameOver() {
-        return gameOver;
+        return isSet(GAME_OVER);
     }
 
     /**
@@ -1071,7 +1914,7 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public int getMazeIndex() {
-        return mazeIndex;
+        return state[MAZE_INDEX];
     }
 
     /**
@@ -1081,7 +1924,7 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public int getCurrentLevel() {
-        return levelCount;
+        return state[LEVEL_COUNT];
     }
 
     /**
@@ -1101,7 +1944,7 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public int getGhostCurrentEdibleScore() {
-        return GHOST_EAT_SCORE * ghostEatMultiplier;
+        return GHOST_EAT_SCORE * state[GHOST_EAT_MULTIPLIER];
     }
 
     /**
@@ -1140,7 +1983,7 @@ public final class Game {
             }
 
         }
-        return pills.get(pillIndex);
+        return isPillActive(pillIndex);
     }
 
     /**
@@ -1157,7 +2000,7 @@ public final class Game {
                 return null;
             }
         }
-        return powerPills.get(powerPillIndex);
+        return isPowerPillActive(powerPillIndex);
     }
 
     /**
@@ -1221,10 +2064,10 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public int getPacmanCurrentNodeIndex() {
-        if (po && !isNodeObservable(internalPacman.currentNodeIndex)) {
+        if (po && !isNodeObservable(state[PACMAN_NODE])) {
             return -1;
         }
-        return internalPacman.currentNodeIndex;
+        return state[PACMAN_NODE];
     }
 
     /**
@@ -1234,10 +2077,10 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public MOVE getPacmanLastMoveMade() {
-        if (po && !isNodeObservable(internalPacman.currentNodeIndex)) {
+        if (po && !isNodeObservable(state[PACMAN_NODE])) {
             return null;
         }
-        return internalPacman.lastMoveMade;
+        return MOVES[state[PACMAN_LAST_MOVE]];
     }
 
     /**
@@ -1247,7 +2090,7 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public int getPacmanNumberOfLivesRemaining() {
-        return internalPacman.numberOfLivesRemaining;
+        return state[PACMAN_LIVES];
     }
 
     /**
@@ -1258,11 +2101,11 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public int getGhostCurrentNodeIndex(GHOST ghostType) {
+        int index = state[GHOSTS + ghostType.ordinal() * GHOST_STRIDE + GHOST_NODE];
         if (po) {
-            int index = ghosts.get(ghostType).currentNodeIndex;
             return isNodeObservable(index) ? index : -1;
         }
-        return ghosts.get(ghostType).currentNodeIndex;
+        return index;
     }
 
     /**
@@ -1273,11 +2116,11 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public MOVE getGhostLastMoveMade(GHOST ghostType) {
+        int ghost = GHOSTS + ghostType.ordinal() * GHOST_STRIDE;
         if (po) {
-            Ghost ghost = ghosts.get(ghostType);
-            return isNodeObservable(ghost.currentNodeIndex) ? ghost.lastMoveMade : null;
+            return isNodeObservable(state[ghost + GHOST_NODE]) ? MOVES[state[ghost + GHOST_LAST_MOVE]] : null;
         }
-        return ghosts.get(ghostType).lastMoveMade;
+        return MOVES[state[ghost + GHOST_LAST_MOVE]];
     }
 
     /**
@@ -1288,11 +2131,11 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public int getGhostEdibleTime(GHOST ghostType) {
+        int ghost = GHOSTS + ghostType.ordinal() * GHOST_STRIDE;
         if (po) {
-            Ghost ghost = ghosts.get(ghostType);
-            return isNodeObservable(ghost.currentNodeIndex) ? ghost.edibleTime : -1;
+            return isNodeObservable(state[ghost + GHOST_NODE]) ? state[ghost + GHOST_EDIBLE_TIME] : -1;
         }
-        return ghosts.get(ghostType).edibleTime;
+        return state[ghost + GHOST_EDIBLE_TIME];
     }
 
     /**
@@ -1303,11 +2146,11 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public Boolean isGhostEdible(GHOST ghostType) {
+        int ghost = GHOSTS + ghostType.ordinal() * GHOST_STRIDE;
         if (po) {
-            Ghost ghost = ghosts.get(ghostType);
-            return (isNodeObservable(ghost.currentNodeIndex)) ? ghost.edibleTime > 0 : null;
+            return (isNodeObservable(state[ghost + GHOST_NODE])) ? state[ghost + GHOST_EDIBLE_TIME] > 0 : null;
         }
-        return ghosts.get(ghostType).edibleTime > 0;
+        return state[ghost + GHOST_EDIBLE_TIME] > 0;
     }
 
     /**
@@ -1317,7 +2160,7 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public int getScore() {
-        return score;
+        return state[SCORE];
     }
 
     /**
@@ -1327,7 +2170,7 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public int getCurrentLevelTime() {
-        return currentLevelTime;
+        return state[CURRENT_LEVEL_TIME];
     }
 
     /**
@@ -1337,7 +2180,20 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public int getTotalTime() {
-        return totalTime;
+        return state[TOTAL_TIME];
+    }
+
+    /**
+     * A 64-bit Zobrist key of the state of the game, kept up to date as the game is advanced so that
+     * it costs nothing to read. It covers the maze, the level, Ms Pac-Man, the ghosts and the pills, but
+     * not the score, the timers or the flags of the last time step, so two games that only differ in those
+     * share the same key. Different states may share a key, but only by chance.
+     *
+     * @return the key of the state
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public long stateHash() {
+        return getHash();
     }
 
     /**
@@ -1367,7 +2223,7 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public int getNumberOfActivePills() {
-        return pills.cardinality();
+        return state[ACTIVE_PILLS];
     }
 
     /**
@@ -1377,7 +2233,7 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public int getNumberOfActivePowerPills() {
-        return powerPills.cardinality();
+        return state[ACTIVE_POWER_PILLS];
     }
 
     /**
@@ -1388,11 +2244,11 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public int getGhostLairTime(GHOST ghostType) {
+        int ghost = GHOSTS + ghostType.ordinal() * GHOST_STRIDE;
         if (po) {
-            Ghost ghost = ghosts.get(ghostType);
-            return isNodeObservable(ghost.currentNodeIndex) ? ghost.lairTime : -1;
+            return isNodeObservable(state[ghost + GHOST_NODE]) ? state[ghost + GHOST_LAIR_TIME] : -1;
         }
-        return ghosts.get(ghostType).lairTime;
+        return state[ghost + GHOST_LAIR_TIME];
     }
 
     /**
@@ -1402,23 +2258,22 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public int[] getActivePillsIndices() {
-        int[] indices = new int[pills.cardinality()];
+        int[] indices = new int[state[ACTIVE_PILLS]];
+        int count = getActivePillsIndices(indices);
 
-        int index = 0;
+        return count == indices.length ? indices : Arrays.copyOf(indices, count);
+    }
 
-        for (int i = 0; i < currentMaze.pillIndices.length; i++) {
-            if (!po || isNodeObservable(currentMaze.pillIndices[i])) {
-                if (pills.get(i)) {
-                    indices[index++] = currentMaze.pillIndices[i];
-                }
-            }
-        }
-        if (index != indices.length) {
-            int[] results = new int[index];
-            System.arraycopy(indices, 0, results, 0, index);
-            return results;
-        }
-        return indices;
+    /**
+     * Same as getActivePillsIndices() but writes the indices into the array given, which avoids allocating one
+     * every tick. The active pills are kept by the game as it goes along, so this only reads them.
+     *
+     * @param indices an array of at least getNumberOfActivePills() elements
+     * @return the number of indices written
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public int getActivePillsIndices(int[] indices) {
+        return getActive(false, indices);
     }
 
     /**
@@ -1428,23 +2283,46 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public int[] getActivePowerPillsIndices() {
-        int[] indices = new int[powerPills.cardinality()];
+        int[] indices = new int[state[ACTIVE_POWER_PILLS]];
+        int count = getActivePowerPillsIndices(indices);
 
+        return count == indices.length ? indices : Arrays.copyOf(indices, count);
+    }
+
+    /**
+     * Same as getActivePowerPillsIndices() but writes the indices into the array given.
+     *
+     * @param indices an array of at least getNumberOfActivePowerPills() elements
+     * @return the number of indices written
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public int getActivePowerPillsIndices(int[] indices) {
+        return getActive(true, indices);
+    }
+
+    /**
+     * Writes the nodes of the active pills or power pills, leaving out those the owner of the game cannot see.
+     */
+    private int getActive(boolean powerPills, int[] indices) {
+        int[] nodes = powerPills ? currentMaze.powerPillIndices : currentMaze.pillIndices;
+        int offset = powerPills ? powerPillsOffset : PILLS;
+        int[] visible = getVisibleRow();
+        int visibleOffset = visible == null ? 0 : powerPills ? visibility.getPowerPillsOffset() : visibility.getPillsOffset();
         int index = 0;
 
-        for (int i = 0; i < currentMaze.powerPillIndices.length; i++) {
-            if (!po || isNodeObservable(currentMaze.powerPillIndices[i])) {
-                if (powerPills.get(i)) {
-                    indices[index++] = currentMaze.powerPillIndices[i];
-                }
+        for (int word = 0; word < words(nodes.length); word++) {
+            int bits = state[offset + word];
+
+            if (visible != null) {
+                bits &= visible[visibleOffset + word];
+            }
+
+            for (; bits != 0; bits &= bits - 1) {
+                indices[index++] = nodes[(word << 5) + Integer.numberOfTrailingZeros(bits)];
             }
         }
-        if (index != indices.length) {
-            int[] results = new int[index];
-            System.arraycopy(indices, 0, results, 0, index);
-            return results;
-        }
-        return indices;
+
+        return index;
     }
 
     /**
@@ -1457,9 +2335,12 @@ public final class Game {
     @SuppressWarnings({"WeakerAccess", "unused"})
     public Boolean doesGhostRequireAction(GHOST ghostType) {
         //inlcude neutral here for the unique case where the ghost just left the lair
-        if (!po || isNodeObservable(ghosts.get(ghostType).currentNodeIndex)) {
-            return ((isJunction(ghosts.get(ghostType).currentNodeIndex) || (ghosts.get(ghostType).lastMoveMade == MOVE.NEUTRAL) && ghosts.get(ghostType).currentNodeIndex == currentMaze.initialGhostNodeIndex)
-                    && (ghosts.get(ghostType).edibleTime == 0 || ghosts.get(ghostType).edibleTime % GHOST_SPEED_REDUCTION != 0));
+        int ghost = GHOSTS + ghostType.ordinal() * GHOST_STRIDE;
+        int currentNodeIndex = state[ghost + GHOST_NODE];
+        int edibleTime = state[ghost + GHOST_EDIBLE_TIME];
+        if (!po || isNodeObservable(currentNodeIndex)) {
+            return ((isJunction(currentNodeIndex) || (state[ghost + GHOST_LAST_MOVE] == MOVE.NEUTRAL.ordinal()) && currentNodeIndex == currentMaze.initialGhostNodeIndex)
+                    && (edibleTime == 0 || edibleTime % GHOST_SPEED_REDUCTION != 0));
         } else {
             return null;
         }
@@ -1473,7 +2354,7 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public boolean isJunction(int nodeIndex) {
-        return currentMaze.graph[nodeIndex].numNeighbouringNodes > 2;
+        return currentMaze.junctions[nodeIndex] != 0;
     }
 
     /**
@@ -1499,6 +2380,20 @@ public final class Game {
         return currentMaze.graph[nodeIndex].allPossibleMoves.get(lastModeMade);
     }
 
+    /**
+     * Gets the possible moves except the one that corresponds to the reverse of the move supplied, as a
+     * bitmask: bit (1 &lt;&lt; move.ordinal()) is set for every possible move. Unlike getPossibleMoves this
+     * does not go through any array or map; MOVE.NEUTRAL gives all the moves from the node.
+     *
+     * @param nodeIndex    The current node index
+     * @param lastMoveMade The last move made (possible moves will exclude the reverse)
+     * @return The mask of possible moves
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public int getPossibleMovesMask(int nodeIndex, MOVE lastMoveMade) {
+        return currentMaze.moveMasks[nodeIndex * NUM_MOVES + lastMoveMade.ordinal()];
+    }
+
     /**
      * Gets the neighbouring nodes from the current node index.
      *
@@ -1533,9 +2428,7 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public int getNeighbour(int nodeIndex, MOVE moveToBeMade) {
-        Integer neighbour = currentMaze.graph[nodeIndex].neighbourhood.get(moveToBeMade);
-
-        return neighbour == null ? -1 : neighbour;
+        return getNeighbourIndex(nodeIndex, moveToBeMade.ordinal());
     }
 
     /**
@@ -1548,10 +2441,9 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public MOVE getMoveToMakeToReachDirectNeighbour(int currentNodeIndex, int neighbourNodeIndex) {
-        for (MOVE move : MOVE.values()) {
-            if (currentMaze.graph[currentNodeIndex].neighbourhood.containsKey(move)
-                    && currentMaze.graph[currentNodeIndex].neighbourhood.get(move) == neighbourNodeIndex) {
-                return move;
+        for (int move = 0; move < 4; move++) {
+            if (currentMaze.neighbours[currentNodeIndex * 4 + move] == neighbourNodeIndex) {
+                return MOVES[move];
             }
         }
 
@@ -1562,6 +2454,22 @@ public final class Game {
     ///////////////////  Helper Methods (computational)  ////////////////////////
     /////////////////////////////////////////////////////////////////////////////
 
+    /**
+     * Makes the greedy next move queries with DM.PATH (getNextMoveTowardsTarget and getNextMoveAwayFromTarget
+     * without a last move, and getApproximateNextMoveTowardsTarget and getApproximateNextMoveAwayFromTarget)
+     * read a precomputed table instead of comparing the distances of the neighbours. The moves are the same,
+     * ties included. The table of a maze is filled one target at a time, which costs a few MB per maze once
+     * every target has been queried, so it is off by default.
+     * <p>
+     * The setting applies to the games created afterwards and to their copies, so searches running on other
+     * threads keep the setting of the game they were given.
+     *
+     * @param enabled true to use the tables
+     */
+    public static void setNextMoveTables(boolean enabled) {
+        nextMoveTables = enabled;
+    }
+
     /**
      * Returns the PATH distance from any node to any other node.
      *
@@ -1571,13 +2479,62 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public int getShortestPathDistance(int fromNodeIndex, int toNodeIndex) {
-        if (fromNodeIndex == toNodeIndex) {
-            return 0;
-        } else if (fromNodeIndex < toNodeIndex) {
-            return currentMaze.shortestPathDistances[((toNodeIndex * (toNodeIndex + 1)) / 2) + fromNodeIndex];
-        } else {
-            return currentMaze.shortestPathDistances[((fromNodeIndex * (fromNodeIndex + 1)) / 2) + toNodeIndex];
-        }
+        return currentMaze.getShortestPathDistance(fromNodeIndex, toNodeIndex);
+    }
+
+    /**
+     * Returns the shortest path distances from one node to several others at once, which is quicker than asking
+     * for them one by one: the distances of the node are looked up once.
+     *
+     * @param fromNodeIndex the node to measure from
+     * @param toNodeIndices the targets
+     * @param distances     receives the distance to each target, in the same order; at least as long as the targets
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public void getShortestPathDistances(int fromNodeIndex, int[] toNodeIndices, int[] distances) {
+        getShortestPathDistances(fromNodeIndex, toNodeIndices, toNodeIndices.length, distances);
+    }
+
+    /**
+     * Same as getShortestPathDistances(int, int[], int[]) for the first targets of the array only, so that the
+     * same arrays can be kept and reused for any number of targets.
+     *
+     * @param fromNodeIndex the node to measure from
+     * @param toNodeIndices the targets, from the first on
+     * @param count         the number of targets
+     * @param distances     receives the distance to each target, in the same order; at least count long
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public void getShortestPathDistances(int fromNodeIndex, int[] toNodeIndices, int count, int[] distances) {
+        currentMaze.getShortestPathDistances(fromNodeIndex, toNodeIndices, count, distances);
+    }
+
+    /**
+     * Returns the shortest path distances from each of several nodes to each of several targets.
+     *
+     * @param fromNodeIndices the nodes to measure from
+     * @param toNodeIndices   the targets
+     * @param distances       receives the distance from the i-th node to the j-th target at
+     *                        i * toNodeIndices.length + j; at least as long as both lengths multiplied
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public void getShortestPathDistances(int[] fromNodeIndices, int[] toNodeIndices, int[] distances) {
+        getShortestPathDistances(fromNodeIndices, fromNodeIndices.length, toNodeIndices, toNodeIndices.length, distances);
+    }
+
+    /**
+     * Same as getShortestPathDistances(int[], int[], int[]) for the first nodes and targets of the arrays only.
+     *
+     * @param fromNodeIndices the nodes to measure from, from the first on
+     * @param fromCount       the number of nodes
+     * @param toNodeIndices   the targets, from the first on
+     * @param toCount         the number of targets
+     * @param distances       receives the distance from the i-th node to the j-th target at i * toCount + j;
+     *                        at least fromCount * toCount long
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public void getShortestPathDistances(int[] fromNodeIndices, int fromCount, int[] toNodeIndices, int toCount, int[] distances) {
+        currentMaze.getShortestPathDistances(fromNodeIndices, fromCount, toNodeIndices, toCount, distances);
     }
 
     /**
@@ -1676,6 +2633,71 @@ public final class Game {
         return target;
     }
 
+    /**
+     * Returns the node of the active pill closest to the node given, which is the node that
+     * getClosestNodeIndexFromNodeIndex(-) returns for getActivePillsIndices() without building the array. By path,
+     * it is found with a search that stops at the distance of the nearest pill (see NearestPillSearch); under partial
+     * observability and for the other distance measures, the active pills are scanned.
+     *
+     * @param fromNodeIndex   the node to start from
+     * @param distanceMeasure the distance measure
+     * @return the node of the nearest active pill, or -1 if there is none
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public int getNearestActivePill(int fromNodeIndex, DM distanceMeasure) {
+        return getNearestActivePill(fromNodeIndex, distanceMeasure, false);
+    }
+
+    /**
+     * Same as getNearestActivePill(int, DM), optionally including the active power pills. They come after the pills
+     * when two are as close, as they do when getClosestNodeIndexFromNodeIndex(-) is given the active pills followed
+     * by the active power pills.
+     *
+     * @param fromNodeIndex     the node to start from
+     * @param distanceMeasure   the distance measure
+     * @param includePowerPills whether the power pills are targets too
+     * @return the node of the nearest active pill or power pill, or -1 if there is none
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public int getNearestActivePill(int fromNodeIndex, DM distanceMeasure, boolean includePowerPills) {
+        int[] visible = getVisibleRow();
+
+        //a node without neighbours (the lair) is at distance -1 of every pill: the scan then returns the first one
+        if (distanceMeasure == DM.PATH && visible == null && currentMaze.moveMasks[fromNodeIndex * NUM_MOVES + MOVE.NEUTRAL.ordinal()] != 0) {
+            return currentMaze.nearestPills.find(fromNodeIndex, state, PILLS, includePowerPills ? powerPillsOffset : -1);
+        }
+
+        int nearest = -1;
+        double minDistance = Integer.MAX_VALUE;
+
+        for (int kind = 0; kind < (includePowerPills ? 2 : 1); kind++) {
+            boolean powerPills = kind == 1;
+            int[] nodes = powerPills ? currentMaze.powerPillIndices : currentMaze.pillIndices;
+            int offset = powerPills ? powerPillsOffset : PILLS;
+            int visibleOffset = visible == null ? 0 : powerPills ? visibility.getPowerPillsOffset() : visibility.getPillsOffset();
+
+            for (int word = 0; word < words(nodes.length); word++) {
+                int bits = state[offset + word];
+
+                if (visible != null) {
+                    bits &= visible[visibleOffset + word];
+                }
+
+                for (; bits != 0; bits &= bits - 1) {
+                    int node = nodes[(word << 5) + Integer.numberOfTrailingZeros(bits)];
+                    double distance = getDistance(node, fromNodeIndex, distanceMeasure);
+
+                    if (distance < minDistance) {
+                        minDistance = distance;
+                        nearest = node;
+                    }
+                }
+            }
+        }
+
+        return nearest;
+    }
+
     /**
      * Gets the farthest node index from node index.
      *
@@ -1713,16 +2735,22 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public MOVE getNextMoveTowardsTarget(int fromNodeIndex, int toNodeIndex, DM distanceMeasure) {
+        if (useNextMoveTables && distanceMeasure == DM.PATH) {
+            int next = currentMaze.nextMoves.getMoveTowards(fromNodeIndex, toNodeIndex, MOVE.NEUTRAL.ordinal());
+            return next == NextMoveTable.NONE ? null : MOVES[next];
+        }
+
         MOVE move = null;
 
         double minDistance = Integer.MAX_VALUE;
 
-        for (Entry<MOVE, Integer> entry : currentMaze.graph[fromNodeIndex].neighbourhood.entrySet()) {
-            double distance = getDistance(entry.getValue(), toNodeIndex, distanceMeasure);
+        for (int moves = getPossibleMovesMask(fromNodeIndex, MOVE.NEUTRAL); moves != 0; moves &= moves - 1) {
+            int next = Integer.numberOfTrailingZeros(moves);
+            double distance = getDistance(currentMaze.neighbours[fromNodeIndex * 4 + next], toNodeIndex, distanceMeasure);
 
             if (distance < minDistance) {
                 minDistance = distance;
-                move = entry.getKey();
+                move = MOVES[next];
             }
         }
 
@@ -1739,16 +2767,22 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public MOVE getNextMoveAwayFromTarget(int fromNodeIndex, int toNodeIndex, DM distanceMeasure) {
+        if (useNextMoveTables && distanceMeasure == DM.PATH) {
+            int next = currentMaze.nextMoves.getMoveAway(fromNodeIndex, toNodeIndex, MOVE.NEUTRAL.ordinal());
+            return next == NextMoveTable.NONE ? null : MOVES[next];
+        }
+
         MOVE move = null;
 
         double maxDistance = Integer.MIN_VALUE;
 
-        for (Entry<MOVE, Integer> entry : currentMaze.graph[fromNodeIndex].neighbourhood.entrySet()) {
-            double distance = getDistance(entry.getValue(), toNodeIndex, distanceMeasure);
+        for (int moves = getPossibleMovesMask(fromNodeIndex, MOVE.NEUTRAL); moves != 0; moves &= moves - 1) {
+            int next = Integer.numberOfTrailingZeros(moves);
+            double distance = getDistance(currentMaze.neighbours[fromNodeIndex * 4 + next], toNodeIndex, distanceMeasure);
 
             if (distance > maxDistance) {
                 maxDistance = distance;
-                move = entry.getKey();
+                move = MOVES[next];
             }
         }
 
@@ -1766,16 +2800,22 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public MOVE getApproximateNextMoveTowardsTarget(int fromNodeIndex, int toNodeIndex, MOVE lastMoveMade, DM distanceMeasure) {
+        if (useNextMoveTables && distanceMeasure == DM.PATH) {
+            int next = currentMaze.nextMoves.getMoveTowards(fromNodeIndex, toNodeIndex, lastMoveMade.ordinal());
+            return next == NextMoveTable.NONE ? null : MOVES[next];
+        }
+
         MOVE move = null;
 
         double minDistance = Integer.MAX_VALUE;
 
-        for (Entry<MOVE, Integer> entry : currentMaze.graph[fromNodeIndex].allNeighbourhoods.get(lastMoveMade).entrySet()) {
-            double distance = getDistance(entry.getValue(), toNodeIndex, distanceMeasure);
+        for (int moves = getPossibleMovesMask(fromNodeIndex, lastMoveMade); moves != 0; moves &= moves - 1) {
+            int next = Integer.numberOfTrailingZeros(moves);
+            double distance = getDistance(currentMaze.neighbours[fromNodeIndex * 4 + next], toNodeIndex, distanceMeasure);
 
             if (distance < minDistance) {
                 minDistance = distance;
-                move = entry.getKey();
+                move = MOVES[next];
             }
         }
 
@@ -1793,16 +2833,22 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public MOVE getApproximateNextMoveAwayFromTarget(int fromNodeIndex, int toNodeIndex, MOVE lastMoveMade, DM distanceMeasure) {
+        if (useNextMoveTables && distanceMeasure == DM.PATH) {
+            int next = currentMaze.nextMoves.getMoveAway(fromNodeIndex, toNodeIndex, lastMoveMade.ordinal());
+            return next == NextMoveTable.NONE ? null : MOVES[next];
+        }
+
         MOVE move = null;
 
         double maxDistance = Integer.MIN_VALUE;
 
-        for (Entry<MOVE, Integer> entry : currentMaze.graph[fromNodeIndex].allNeighbourhoods.get(lastMoveMade).entrySet()) {
-            double distance = getDistance(entry.getValue(), toNodeIndex, distanceMeasure);
+        for (int moves = getPossibleMovesMask(fromNodeIndex, lastMoveMade); moves != 0; moves &= moves - 1) {
+            int next = Integer.numberOfTrailingZeros(moves);
+            double distance = getDistance(currentMaze.neighbours[fromNodeIndex * 4 + next], toNodeIndex, distanceMeasure);
 
             if (distance > maxDistance) {
                 maxDistance = distance;
-                move = entry.getKey();
+                move = MOVES[next];
             }
         }
 
@@ -1824,12 +2870,13 @@ public final class Game {
 
         double minDistance = Integer.MAX_VALUE;
 
-        for (Entry<MOVE, Integer> entry : currentMaze.graph[fromNodeIndex].allNeighbourhoods.get(lastMoveMade).entrySet()) {
-            double distance = getDistance(entry.getValue(), toNodeIndex, lastMoveMade, distanceMeasure);
+        for (int moves = getPossibleMovesMask(fromNodeIndex, lastMoveMade); moves != 0; moves &= moves - 1) {
+            int next = Integer.numberOfTrailingZeros(moves);
+            double distance = getDistance(currentMaze.neighbours[fromNodeIndex * 4 + next], toNodeIndex, lastMoveMade, distanceMeasure);
 
             if (distance < minDistance) {
                 minDistance = distance;
-                move = entry.getKey();
+                move = MOVES[next];
             }
         }
 
@@ -1851,12 +2898,13 @@ public final class Game {
 
         double maxDistance = Integer.MIN_VALUE;
 
-        for (Entry<MOVE, Integer> entry : currentMaze.graph[fromNodeIndex].allNeighbourhoods.get(lastMoveMade).entrySet()) {
-            double distance = getDistance(entry.getValue(), toNodeIndex, lastMoveMade, distanceMeasure);
+        for (int moves = getPossibleMovesMask(fromNodeIndex, lastMoveMade); moves != 0; moves &= moves - 1) {
+            int next = Integer.numberOfTrailingZeros(moves);
+            double distance = getDistance(currentMaze.neighbours[fromNodeIndex * 4 + next], toNodeIndex, lastMoveMade, distanceMeasure);
 
             if (distance > maxDistance) {
                 maxDistance = distance;
-                move = entry.getKey();
+                move = MOVES[next];
             }
         }
 
@@ -1887,7 +2935,20 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public int[] getShortestPath(int fromNodeIndex, int toNodeIndex) {
-        return caches[mazeIndex].getPathFromA2B(fromNodeIndex, toNodeIndex);
+        return getPathsCache(state[MAZE_INDEX]).getPathFromA2B(fromNodeIndex, toNodeIndex);
+    }
+
+    /**
+     * Same as getShortestPath(int, int) but fills the view given instead of allocating an array.
+     *
+     * @param fromNodeIndex The node index from where to start (i.e., current position)
+     * @param toNodeIndex   The target node index
+     * @param path          The view to fill, which can be reused between calls
+     * @return the view given
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public IntPathView getShortestPath(int fromNodeIndex, int toNodeIndex, IntPathView path) {
+        return getPathsCache(state[MAZE_INDEX]).getPathFromA2B(fromNodeIndex, toNodeIndex, path);
     }
 
     /**
@@ -1919,12 +2980,32 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public int[] getShortestPath(int fromNodeIndex, int toNodeIndex, MOVE lastMoveMade) {
-        if (currentMaze.graph[fromNodeIndex].neighbourhood.size() == 0)//lair
+        if (currentMaze.moveMasks[fromNodeIndex * NUM_MOVES + MOVE.NEUTRAL.ordinal()] == 0)//lair
         {
             return new int[0];
         }
 
-        return caches[mazeIndex].getPathFromA2B(fromNodeIndex, toNodeIndex, lastMoveMade);
+        return getPathsCache(state[MAZE_INDEX]).getPathFromA2B(fromNodeIndex, toNodeIndex, lastMoveMade);
+    }
+
+    /**
+     * Same as getShortestPath(int, int, MOVE) but fills the view given instead of allocating an array.
+     *
+     * @param fromNodeIndex The node index from where to start (i.e., current position)
+     * @param toNodeIndex   The target node index
+     * @param lastMoveMade  The last move made
+     * @param path          The view to fill, which can be reused between calls
+     * @return the view given
+     */
+    @SuppressWarnings({"WeakerAccess", "unused"})
+    public IntPathView getShortestPath(int fromNodeIndex, int toNodeIndex, MOVE lastMoveMade, IntPathView path) {
+        if (currentMaze.moveMasks[fromNodeIndex * NUM_MOVES + MOVE.NEUTRAL.ordinal()] == 0)//lair
+        {
+            path.clear();
+            return path;
+        }
+
+        return getPathsCache(state[MAZE_INDEX]).getPathFromA2B(fromNodeIndex, toNodeIndex, lastMoveMade, path);
     }
 
     /**
@@ -1954,12 +3035,12 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public int getShortestPathDistance(int fromNodeIndex, int toNodeIndex, MOVE lastMoveMade) {
-        if (currentMaze.graph[fromNodeIndex].neighbourhood.size() == 0)//lair
+        if (currentMaze.moveMasks[fromNodeIndex * NUM_MOVES + MOVE.NEUTRAL.ordinal()] == 0)//lair
         {
             return 0;
         }
 
-        return caches[mazeIndex].getPathDistanceFromA2B(fromNodeIndex, toNodeIndex, lastMoveMade);
+        return getPathsCache(state[MAZE_INDEX]).getPathDistanceFromA2B(fromNodeIndex, toNodeIndex, lastMoveMade);
     }
 
     /**
@@ -1993,7 +3074,7 @@ public final class Game {
      */
     @SuppressWarnings({"WeakerAccess", "unused"})
     public GameInfo getBlankGameInfo() {
-        return new GameInfo(pills.length());
+        return new GameInfo(currentMaze.pillIndices.length);
     }
 
     /**
@@ -2051,12 +3132,36 @@ public final class Game {
         // Destroy the messenger reference - can't allow communication in the playouts
         // Can we? start a fresh one?
         game.messenger = null;
-        game.pills = info.getPills();
-        game.powerPills = info.getPowerPills();
+        BitSet pills = info.getPills();
+        for (int i = 0; i < currentMaze.pillIndices.length; i++) {
+            game.setBit(PILLS, i, pills.get(i));
+        }
+        BitSet powerPills = info.getPowerPills();
+        for (int i = 0; i < currentMaze.powerPillIndices.length; i++) {
+            game.setBit(game.powerPillsOffset, i, powerPills.get(i));
+        }
+        game.countPills();
         // Etc
-        game.internalPacman = info.getPacman();
-
-        game.ghosts = info.getGhosts();
+        PacMan pacman = info.getPacman();
+        if (pacman != null) {
+            game.state[PACMAN_NODE] = pacman.currentNodeIndex;
+            game.state[PACMAN_LAST_MOVE] = (pacman.lastMoveMade == null ? MOVE.NEUTRAL : pacman.lastMoveMade).ordinal();
+            game.state[PACMAN_LIVES] = pacman.numberOfLivesRemaining;
+        }
+
+        EnumMap<GHOST, Ghost> ghosts = info.getGhosts();
+        for (int i = 0; i < NUM_GHOSTS; i++) {
+            Ghost ghost = ghosts.get(GHOST_TYPES[i]);
+            game.setFlag(GHOST_ABSENT << i, ghost == null);
+            if (ghost != null) {
+                int offset = GHOSTS + i * GHOST_STRIDE;
+                game.state[offset + GHOST_NODE] = ghost.currentNodeIndex;
+                game.state[offset + GHOST_EDIBLE_TIME] = ghost.edibleTime;
+                game.state[offset + GHOST_LAIR_TIME] = ghost.lairTime;
+                game.state[offset + GHOST_LAST_MOVE] = (ghost.lastMoveMade == null ? MOVE.NEUTRAL : ghost.lastMoveMade).ordinal();
+            }
+        }
+        game.rehash();
 
         game.beenBlanked = true;
         game.po = false;
@@ -2088,4 +3193,18 @@ public final class Game {
     public void setPowerPillsPresent(boolean powerPillsPresent) {
         this.powerPillsPresent = powerPillsPresent;
     }
-}
\ No newline at end of file
+
+    /**
+     * A maze and its paths cache, with the locks they are loaded under.
+     */
+    private static final class MazeSlot {
+        final Object mazeLock = new Object();
+        final Object cacheLock = new Object();
+        volatile Maze maze;
+        volatile PathsCache cache;
+
+        MazeSlot(Maze maze) {
+            this.maze = maze;
+        }
+    }
+}
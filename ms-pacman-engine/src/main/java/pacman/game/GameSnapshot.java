@@ -0,0 +1,29 @@
+package pacman.game;
+
+/**
+ * A reusable buffer that holds the dynamic state of a {@link Game}.
+ * <p>
+ * A snapshot is filled using {@link Game#snapshot(GameSnapshot)} and written back into a game using
+ * {@link Game#restore(GameSnapshot)}. Neither call allocates once the buffer has been sized for the
+ * current maze, so a search can keep one snapshot and one scratch game per worker and reset the scratch
+ * game before every rollout instead of calling {@link Game#copy()}.
+ * <p>
+ * The static parts of a game (the PO type, the sight limit and the messenger) are not part of the snapshot;
+ * a snapshot should only be restored into a game that was copied from the same source.
+ */
+public final class GameSnapshot {
+    //the packed state block of the game
+    int[] state = new int[0];
+    boolean ghostsPresent;
+    boolean pillsPresent;
+    boolean powerPillsPresent;
+    boolean po;
+    boolean beenBlanked;
+    int agent;
+
+    /**
+     * Creates an empty snapshot. It is sized on first use.
+     */
+    public GameSnapshot() {
+    }
+}
@@ -97,6 +97,21 @@ public final class GameView extends JComponent {
         }
     }
 
+    /**
+     * Adds the nodes of a path to be highlighted using the color specified
+     *
+     * @param game  Copy of the current game
+     * @param color Colour to be used
+     * @param path  The path whose nodes are to be highlighted by the chosen colour
+     */
+    public synchronized static void addPoints(Game game, Color color, IntPathView path) {
+        if (isVisible) {
+            for (int i = 0; i < path.length(); i++) {
+                debugPointers.add(new DebugPointer(game.getNodeXCood(path.get(i)), game.getNodeYCood(path.get(i)), color));
+            }
+        }
+    }
+
     /**
      * Adds a set of lines to be drawn using the color specified (fromNnodeIndices.length must be equals toNodeIndices.length)
      *
@@ -658,8 +673,9 @@ public final class GameView extends JComponent {
             }
         }
 
+        //the mazes added to the game have no picture, so only their pills and the agents are drawn
         public BufferedImage getMaze(int mazeIndex) {
-            return mazes[mazeIndex];
+            return mazeIndex < mazes.length ? mazes[mazeIndex] : null;
         }
 
         private BufferedImage _loadImage(String fileName) {
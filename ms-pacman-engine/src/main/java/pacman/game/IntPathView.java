@@ -0,0 +1,108 @@
+package pacman.game;
+
+/**
+ * A read-only view of a path of node indices, made of up to three segments of the paths stored in the paths cache
+ * (to the nearest junction, from junction to junction and from the junction to the target). The segments are not
+ * copied, so filling a view using {@link Game#getShortestPath(int, int, IntPathView)} allocates nothing, and a view
+ * can be reused for every query. It is only valid until the next time it is filled.
+ */
+public final class IntPathView {
+    private static final int MAX_SEGMENTS = 3;
+
+    private final int[][] segments = new int[MAX_SEGMENTS][];
+    private final int[] lengths = new int[MAX_SEGMENTS];
+    private int numSegments;
+    private int length;
+
+    /**
+     * Creates an empty path view.
+     */
+    public IntPathView() {
+    }
+
+    /**
+     * The number of nodes in the path.
+     *
+     * @return the length of the path
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Whether the path has no nodes, which is the case when the source is the target.
+     *
+     * @return true if the path is empty
+     */
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /**
+     * The node index at the given position of the path: 0 is the first node after the source.
+     *
+     * @param index the position in the path
+     * @return the node index
+     */
+    public int get(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + length);
+        }
+
+        for (int i = 0; ; i++) {
+            if (index < lengths[i]) {
+                return segments[i][index];
+            }
+            index -= lengths[i];
+        }
+    }
+
+    /**
+     * Copies the path into a new array, as returned by {@link Game#getShortestPath(int, int)}.
+     *
+     * @return the node indices of the path
+     */
+    public int[] toArray() {
+        int[] path = new int[length];
+        int index = 0;
+
+        for (int i = 0; i < numSegments; i++) {
+            System.arraycopy(segments[i], 0, path, index, lengths[i]);
+            index += lengths[i];
+        }
+
+        return path;
+    }
+
+    /**
+     * Empties the view. Used by the paths cache when filling it.
+     */
+    public void clear() {
+        for (int i = 0; i < numSegments; i++) {
+            segments[i] = null;
+        }
+        numSegments = 0;
+        length = 0;
+    }
+
+    /**
+     * Appends the first nodes of the segment given to the path, without copying them. Used by the paths cache when
+     * filling the view.
+     *
+     * @param segment the stored path
+     * @param count   the number of nodes of the segment that are part of the path
+     */
+    public void append(int[] segment, int count) {
+        if (count > segment.length) {
+            throw new IndexOutOfBoundsException("Count: " + count + ", Length: " + segment.length);
+        }
+        if (count == 0) {
+            return;
+        }
+
+        segments[numSegments] = segment;
+        lengths[numSegments] = count;
+        numSegments++;
+        length += count;
+    }
+}
@@ -0,0 +1,43 @@
+package pacman.game;
+
+/**
+ * The events that end a call to {@link Game#advanceUntil(AgentSelector, StopCondition, int, TickPolicy, TickEvents)}.
+ * Conditions are combined with {@link #or(StopCondition)}; the game always stops once it is over.
+ * <p>
+ * Conditions are immutable, so they can be created once and shared by every search.
+ */
+public final class StopCondition {
+    /**
+     * A selected agent is on a junction other than the node it was on when the call started.
+     */
+    public static final StopCondition JUNCTION = new StopCondition(1);
+    public static final StopCondition PILL_EATEN = new StopCondition(1 << 1);
+    public static final StopCondition POWER_PILL_EATEN = new StopCondition(1 << 2);
+    public static final StopCondition GHOST_EATEN = new StopCondition(1 << 3);
+    public static final StopCondition PACMAN_EATEN = new StopCondition(1 << 4);
+    public static final StopCondition LEVEL_CHANGED = new StopCondition(1 << 5);
+    /**
+     * Only stop when the maximum number of ticks has been played or the game is over.
+     */
+    public static final StopCondition NEVER = new StopCondition(0);
+
+    final int mask;
+
+    private StopCondition(int mask) {
+        this.mask = mask;
+    }
+
+    /**
+     * Stops on either this condition or the one given.
+     *
+     * @param other The other condition
+     * @return The combined condition
+     */
+    public StopCondition or(StopCondition other) {
+        return new StopCondition(mask | other.mask);
+    }
+
+    boolean has(StopCondition condition) {
+        return (mask & condition.mask) != 0;
+    }
+}
@@ -0,0 +1,57 @@
+package pacman.game;
+
+/**
+ * What happened during a call to
+ * {@link Game#advanceUntil(AgentSelector, StopCondition, int, TickPolicy, TickEvents)}. The same instance can
+ * be passed to every call: it is cleared at the start of each.
+ */
+public final class TickEvents {
+    int ticks;
+    int pillsEaten;
+    int powerPillsEaten;
+    int ghostsEaten;
+    int pacmanEaten;
+    int levelsCompleted;
+    int score;
+
+    public TickEvents() {
+    }
+
+    void clear() {
+        ticks = pillsEaten = powerPillsEaten = ghostsEaten = pacmanEaten = levelsCompleted = score = 0;
+    }
+
+    public int getTicks() {
+        return ticks;
+    }
+
+    public int getPillsEaten() {
+        return pillsEaten;
+    }
+
+    public int getPowerPillsEaten() {
+        return powerPillsEaten;
+    }
+
+    public int getGhostsEaten() {
+        return ghostsEaten;
+    }
+
+    /**
+     * @return The number of lives Ms Pac-Man lost
+     */
+    public int getPacmanEaten() {
+        return pacmanEaten;
+    }
+
+    public int getLevelsCompleted() {
+        return levelsCompleted;
+    }
+
+    /**
+     * @return The score gained
+     */
+    public int getScore() {
+        return score;
+    }
+}
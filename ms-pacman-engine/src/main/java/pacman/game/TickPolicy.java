@@ -0,0 +1,43 @@
+package pacman.game;
+
+/**
+ * Supplies the moves for every tick of
+ * {@link Game#advanceUntil(AgentSelector, StopCondition, int, TickPolicy, TickEvents)}, in the packed form
+ * taken by {@link Game#advanceGame(int, int)}. Implementations should neither copy the game nor allocate,
+ * as they are called once per tick.
+ */
+public interface TickPolicy {
+    /**
+     * Returned by {@link #getPacmanMove(Game)} to keep Ms Pac-Man on her current path: she keeps her last
+     * move if she can, otherwise she takes the first way out of the node that does not reverse her.
+     */
+    int FOLLOW_PATH = -1;
+
+    /**
+     * Moves Ms Pac-Man along her path and leaves the ghosts to the engine, which keeps them going in their
+     * current direction and picks a random one at junctions.
+     */
+    TickPolicy FOLLOW_PATHS = new TickPolicy() {
+        @Override
+        public int getPacmanMove(Game game) {
+            return FOLLOW_PATH;
+        }
+
+        @Override
+        public int getGhostMoves(Game game) {
+            return Game.NO_GHOST_MOVES;
+        }
+    };
+
+    /**
+     * @param game The game being advanced; it must not be modified
+     * @return The ordinal of the move of Ms Pac-Man, or FOLLOW_PATH
+     */
+    int getPacmanMove(Game game);
+
+    /**
+     * @param game The game being advanced; it must not be modified
+     * @return The packed moves of the ghosts, see {@link Game#packGhostMove(int, Constants.GHOST, Constants.MOVE)}
+     */
+    int getGhostMoves(Game game);
+}
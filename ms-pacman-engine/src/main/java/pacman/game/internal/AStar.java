@@ -3,178 +3,255 @@ package pacman.game.internal;
 import pacman.game.Constants.MOVE;
 import pacman.game.Game;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.EnumMap;
-import java.util.PriorityQueue;
 
 /*
- * This class is used to compute the shortest path for the ghosts: as these may not reverse, one cannot use 
+ * This class is used to compute the shortest path for the ghosts: as these may not reverse, one cannot use
  * a simple look-up table. Instead, we use the pre-computed shortest path distances as an admissable
  * heuristic. Although AStar needs to be run every time a path is to be found, it is very quick and does
  * not expand too many nodes beyond those on the optimal path.
+ *
+ * The graph itself is immutable: the state of a search (scores, parents, open and closed sets) lives in a
+ * workspace owned by the calling thread, so several threads can search the same maze at once. The open set is a
+ * binary heap indexed by node, which orders and breaks ties exactly like the PriorityQueue used previously.
  */
 public class AStar {
-    private N[] graph;
+    private static final MOVE[] MOVES = MOVE.values();
 
-    public void createGraph(Node[] nodes) {
-        graph = new N[nodes.length];
+    //the node reached by each move, at [node*4+move], or -1
+    private int[] neighbours;
 
-        //create graph
-        for (int i = 0; i < nodes.length; i++) {
-            graph[i] = new N(nodes[i].nodeIndex);
+    private final ThreadLocal<Workspace> workspaces = new ThreadLocal<Workspace>() {
+        @Override
+        protected Workspace initialValue() {
+            return new Workspace(neighbours.length / 4);
         }
+    };
+
+    public void createGraph(Node[] nodes) {
+        neighbours = new int[nodes.length * 4];
+        Arrays.fill(neighbours, -1);
 
         //add neighbours
         for (int i = 0; i < nodes.length; i++) {
-            EnumMap<MOVE, Integer> neighbours = nodes[i].neighbourhood;
-            MOVE[] moves = MOVE.values();
+            EnumMap<MOVE, Integer> neighbourhood = nodes[i].neighbourhood;
 
-            for (int j = 0; j < moves.length; j++) {
-                if (neighbours.containsKey(moves[j])) {
-                    graph[i].adj.add(new E(graph[neighbours.get(moves[j])], moves[j], 1));
+            for (int j = 0; j < 4; j++) {
+                if (neighbourhood.containsKey(MOVES[j])) {
+                    neighbours[nodes[i].nodeIndex * 4 + j] = neighbourhood.get(MOVES[j]);
                 }
             }
         }
     }
 
-    public synchronized int[] computePathsAStar(int s, int t, MOVE lastMoveMade, Game game) {
-        N start = graph[s];
-        N target = graph[t];
-
-        PriorityQueue<N> open = new PriorityQueue<N>();
-        ArrayList<N> closed = new ArrayList<N>();
-
-        start.g = 0;
-        start.h = game.getShortestPathDistance(start.index, target.index);
-
-        start.reached = lastMoveMade;
-
-        open.add(start);
-
-        while (!open.isEmpty()) {
-            N currentNode = open.poll();
-            closed.add(currentNode);
+    public int[] computePathsAStar(int s, int t, MOVE lastMoveMade, Game game) {
+        return computePathsAStar(s, t, lastMoveMade, game.getCurrentMaze());
+    }
 
-            if (currentNode.isEqual(target)) {
-                break;
-            }
+    //uses the shortest path distances of the maze as the heuristic, so it does not need a game
+    public int[] computePathsAStar(int s, int t, MOVE lastMoveMade, Maze maze) {
+        Workspace ws = workspaces.get();
 
-            for (E next : currentNode.adj) {
-                if (next.move != currentNode.reached.opposite()) {
-                    double currentDistance = next.cost;
+        try {
+            ws.touch(s);
+            ws.g[s] = 0;
+            ws.h[s] = maze.getShortestPathDistance(s, t);
+            ws.reached[s] = (byte) lastMoveMade.ordinal();
+            ws.offer(s);
 
-                    if (!open.contains(next.node) && !closed.contains(next.node)) {
-                        next.node.g = currentDistance + currentNode.g;
-                        next.node.h = game.getShortestPathDistance(next.node.index, target.index);
-                        next.node.parent = currentNode;
+            while (ws.size > 0) {
+                int currentNode = ws.poll();
+                ws.closed[currentNode] = true;
 
-                        next.node.reached = next.move;
+                if (currentNode == t) {
+                    break;
+                }
 
-                        open.add(next.node);
-                    } else if (currentDistance + currentNode.g < next.node.g) {
-                        next.node.g = currentDistance + currentNode.g;
-                        next.node.parent = currentNode;
+                int reverse = MOVES[ws.reached[currentNode]].opposite().ordinal();
 
-                        next.node.reached = next.move;
+                for (int move = 0; move < 4; move++) {
+                    int next = neighbours[currentNode * 4 + move];
 
-                        if (open.contains(next.node)) {
-                            open.remove(next.node);
-                        }
+                    if (next == -1 || move == reverse) {
+                        continue;
+                    }
 
-                        if (closed.contains(next.node)) {
-                            closed.remove(next.node);
+                    int distance = 1 + ws.g[currentNode];
+
+                    if (ws.pos[next] == -1 && !ws.closed[next]) {
+                        ws.touch(next);
+                        ws.g[next] = distance;
+                        ws.h[next] = maze.getShortestPathDistance(next, t);
+                        ws.parent[next] = currentNode;
+                        ws.reached[next] = (byte) move;
+                        ws.offer(next);
+                    } else if (distance < ws.g[next]) {
+                        ws.g[next] = distance;
+                        ws.parent[next] = currentNode;
+                        ws.reached[next] = (byte) move;
+
+                        if (ws.pos[next] != -1) {
+                            ws.removeAt(ws.pos[next]);
                         }
 
-                        open.add(next.node);
+                        ws.closed[next] = false;
+                        ws.offer(next);
                     }
                 }
             }
-        }
 
-        return extractPath(target);
+            return extractPath(ws, t);
+        } finally {
+            ws.reset();
+        }
     }
 
-    public synchronized int[] computePathsAStar(int s, int t, Game game) {
+    public int[] computePathsAStar(int s, int t, Game game) {
         return computePathsAStar(s, t, MOVE.NEUTRAL, game);
     }
 
-    private synchronized int[] extractPath(N target) {
-        ArrayList<Integer> route = new ArrayList<Integer>();
-        N current = target;
-        route.add(current.index);
+    private int[] extractPath(Workspace ws, int target) {
+        int length = 1;
 
-        while (current.parent != null) {
-            route.add(current.parent.index);
-            current = current.parent;
+        for (int current = target; ws.parent[current] != -1; current = ws.parent[current]) {
+            length++;
         }
 
-        Collections.reverse(route);
+        int[] routeArray = new int[length];
+        int current = target;
 
-        int[] routeArray = new int[route.size()];
-
-        for (int i = 0; i < routeArray.length; i++) {
-            routeArray[i] = route.get(i);
+        for (int i = length - 1; i >= 0; i--) {
+            routeArray[i] = current;
+            current = ws.parent[current];
         }
 
         return routeArray;
     }
 
+    //nothing to reset any more: each search clears the workspace of its thread when it is done
     public void resetGraph() {
-        for (N node : graph) {
-            node.g = 0;
-            node.h = 0;
-            node.parent = null;
-            node.reached = null;
-        }
     }
-}
 
-class N implements Comparable<N> {
-    public N parent;
-    public double g, h;
-    public boolean visited = false;
-    public ArrayList<E> adj;
-    public int index;
-    public MOVE reached = null;
-
-    public N(int index) {
-        adj = new ArrayList<E>();
-        this.index = index;
-    }
+    private static final class Workspace {
+        final int[] g, h, parent, pos, heap, touched;
+        final byte[] reached;
+        final boolean[] closed;
+        int size, numTouched;
+
+        Workspace(int numNodes) {
+            g = new int[numNodes];
+            h = new int[numNodes];
+            parent = new int[numNodes];
+            pos = new int[numNodes];
+            heap = new int[numNodes];
+            touched = new int[numNodes];
+            reached = new byte[numNodes];
+            closed = new boolean[numNodes];
+            Arrays.fill(parent, -1);
+            Arrays.fill(pos, -1);
+        }
 
-    public N(double g, double h) {
-        this.g = g;
-        this.h = h;
-    }
+        void touch(int node) {
+            touched[numTouched++] = node;
+        }
 
-    public boolean isEqual(N another) {
-        return index == another.index;
-    }
+        void reset() {
+            for (int i = 0; i < numTouched; i++) {
+                int node = touched[i];
+                parent[node] = -1;
+                pos[node] = -1;
+                closed[node] = false;
+            }
+            numTouched = 0;
+            size = 0;
+        }
 
-    public String toString() {
-        return "" + index;
-    }
+        int compare(int a, int b) {
+            return Integer.compare(g[a] + h[a], g[b] + h[b]);
+        }
 
-    public int compareTo(N another) {
-        if ((g + h) < (another.g + another.h)) {
-            return -1;
-        } else if ((g + h) > (another.g + another.h)) {
-            return 1;
+        void offer(int node) {
+            int k = size++;
+
+            if (k == 0) {
+                set(0, node);
+            } else {
+                siftUp(k, node);
+            }
         }
 
-        return 0;
-    }
-}
+        int poll() {
+            int result = heap[0];
+            int last = heap[--size];
+
+            pos[result] = -1;
+
+            if (size != 0) {
+                siftDown(0, last);
+            }
+
+            return result;
+        }
+
+        void removeAt(int i) {
+            int removed = heap[i];
+            int s = --size;
+
+            pos[removed] = -1;
 
-class E {
-    public N node;
-    public MOVE move;
-    public double cost;
+            if (s != i) {
+                int moved = heap[s];
+                siftDown(i, moved);
 
-    public E(N node, MOVE move, double cost) {
-        this.node = node;
-        this.move = move;
-        this.cost = cost;
+                if (heap[i] == moved) {
+                    siftUp(i, moved);
+                }
+            }
+        }
+
+        void siftUp(int k, int node) {
+            while (k > 0) {
+                int parent = (k - 1) >>> 1;
+                int e = heap[parent];
+
+                if (compare(node, e) >= 0) {
+                    break;
+                }
+
+                set(k, e);
+                k = parent;
+            }
+
+            set(k, node);
+        }
+
+        void siftDown(int k, int node) {
+            int half = size >>> 1;
+
+            while (k < half) {
+                int child = (k << 1) + 1;
+                int c = heap[child];
+                int right = child + 1;
+
+                if (right < size && compare(c, heap[right]) > 0) {
+                    c = heap[child = right];
+                }
+
+                if (compare(node, c) <= 0) {
+                    break;
+                }
+
+                set(k, c);
+                k = child;
+            }
+
+            set(k, node);
+        }
+
+        private void set(int k, int node) {
+            heap[k] = node;
+            pos[node] = k;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,218 @@
+package pacman.game.internal;
+
+import java.util.Arrays;
+
+/*
+ * Computes the distances from a node to all the others with a breadth-first search when they are first needed and
+ * keeps the rows of the most recently used nodes, so the memory used is linear in the size of the maze (an int per
+ * node, plus one char per node and cached row, plus an int per node and stripe for the searches) instead of
+ * quadratic. A query reuses the row of either of its nodes; otherwise the row of the target is computed, as the same
+ * targets (Ms Pac-Man, the pills) tend to be queried over and over. The distances are those of the table of the
+ * built-in mazes, since all moves cost 1 and the maze is symmetric.
+ *
+ * The rows are split into stripes by node, each with its own lock and its own least recently used list, so that
+ * threads querying the rows of different nodes, such as parallel searches or the parallel build of the paths cache,
+ * don't wait for each other.
+ */
+public final class BfsDistanceOracle implements DistanceOracle {
+    //stored for the nodes that cannot be reached, which fits in a char since no distance comes close
+    private static final char UNREACHABLE = Character.MAX_VALUE;
+    //the most stripes the rows are split into
+    private static final int MAX_STRIPES = 16;
+
+    private final int[] neighbours;
+    private final int numNodes;
+
+    //the row held for each node in the stripe of the node, or -1; only read and written under the lock of the stripe
+    private final int[] rowOfNode;
+    //node i has its row in stripe i % stripes.length
+    private final Stripe[] stripes;
+
+    public BfsDistanceOracle(Maze maze, int maxRows) {
+        if (maxRows < 1) {
+            throw new IllegalArgumentException("At least one row must be kept: " + maxRows);
+        }
+
+        this.neighbours = maze.neighbours;
+        this.numNodes = maze.graph.length;
+        this.rowOfNode = new int[numNodes];
+        Arrays.fill(rowOfNode, -1);
+
+        int rows = Math.min(maxRows, numNodes);
+        this.stripes = new Stripe[Math.max(1, Math.min(MAX_STRIPES, rows))];
+
+        for (int i = 0; i < stripes.length; i++) {
+            //the rows are shared out as evenly as possible
+            stripes[i] = new Stripe(rows / stripes.length + (i < rows % stripes.length ? 1 : 0));
+        }
+    }
+
+    @Override
+    public int getShortestPathDistance(int fromNodeIndex, int toNodeIndex) {
+        if (fromNodeIndex == toNodeIndex) {
+            return 0;
+        }
+
+        int distance = stripeOf(toNodeIndex).getCachedDistance(toNodeIndex, fromNodeIndex);
+
+        if (distance == -1) {
+            distance = stripeOf(fromNodeIndex).getCachedDistance(fromNodeIndex, toNodeIndex);
+        }
+
+        if (distance == -1) {
+            distance = stripeOf(toNodeIndex).getDistance(toNodeIndex, fromNodeIndex);
+        }
+
+        return distance == UNREACHABLE ? -1 : distance;
+    }
+
+    //reads all the distances from the row of the node, computing it if needed
+    @Override
+    public void getShortestPathDistances(int fromNodeIndex, int[] toNodeIndices, int count, int[] out, int offset) {
+        stripeOf(fromNodeIndex).getDistances(fromNodeIndex, toNodeIndices, count, out, offset);
+    }
+
+    private Stripe stripeOf(int nodeIndex) {
+        return stripes[nodeIndex % stripes.length];
+    }
+
+    /*
+     * The rows of the nodes of one stripe, their nodes and a doubly-linked list of them from the most to the least
+     * recently used. Every method holds the lock of the stripe.
+     */
+    private final class Stripe {
+        private final char[][] rows;
+        private final int[] rowNodes, newer, older;
+        //the queue of the breadth-first search, allocated by the first one
+        private int[] queue;
+        private int newest = -1, oldest = -1, numRows;
+
+        Stripe(int maxRows) {
+            this.rows = new char[maxRows][];
+            this.rowNodes = new int[maxRows];
+            this.newer = new int[maxRows];
+            this.older = new int[maxRows];
+        }
+
+        //the distance from the node to the target if the row of the node is held, or -1
+        synchronized int getCachedDistance(int nodeIndex, int targetIndex) {
+            int row = rowOfNode[nodeIndex];
+
+            if (row == -1) {
+                return -1;
+            }
+
+            touch(row);
+            return rows[row][targetIndex];
+        }
+
+        //the distance from the node to the target, computing the row of the node if needed
+        synchronized int getDistance(int nodeIndex, int targetIndex) {
+            return rows[getRow(nodeIndex)][targetIndex];
+        }
+
+        synchronized void getDistances(int nodeIndex, int[] targetIndices, int count, int[] out, int offset) {
+            char[] distances = rows[getRow(nodeIndex)];
+
+            for (int i = 0; i < count; i++) {
+                char distance = distances[targetIndices[i]];
+                out[offset + i] = distance == UNREACHABLE ? -1 : distance;
+            }
+        }
+
+        private int getRow(int nodeIndex) {
+            int row = rowOfNode[nodeIndex];
+
+            if (row == -1) {
+                row = addRow(nodeIndex);
+            }
+
+            touch(row);
+            return row;
+        }
+
+        //fills the least recently used row (or a new one) with the distances from the node given
+        private int addRow(int nodeIndex) {
+            int row;
+
+            if (numRows < rows.length) {
+                row = numRows++;
+                rows[row] = new char[numNodes];
+            } else {
+                row = oldest;
+                unlink(row);
+                rowOfNode[rowNodes[row]] = -1;
+            }
+
+            search(nodeIndex, rows[row]);
+            rowNodes[row] = nodeIndex;
+            rowOfNode[nodeIndex] = row;
+            link(row);
+
+            return row;
+        }
+
+        private void search(int source, char[] distances) {
+            if (queue == null) {
+                queue = new int[numNodes];
+            }
+
+            Arrays.fill(distances, UNREACHABLE);
+
+            int head = 0, tail = 0;
+
+            distances[source] = 0;
+            queue[tail++] = source;
+
+            while (head < tail) {
+                int node = queue[head++];
+
+                for (int move = 0; move < 4; move++) {
+                    int next = neighbours[node * 4 + move];
+
+                    if (next != -1 && distances[next] == UNREACHABLE) {
+                        distances[next] = (char) (distances[node] + 1);
+                        queue[tail++] = next;
+                    }
+                }
+            }
+        }
+
+        //moves the row to the front of the list
+        private void touch(int row) {
+            if (row != newest) {
+                unlink(row);
+                link(row);
+            }
+        }
+
+        private void link(int row) {
+            older[row] = newest;
+            newer[row] = -1;
+
+            if (newest != -1) {
+                newer[newest] = row;
+            }
+
+            newest = row;
+
+            if (oldest == -1) {
+                oldest = row;
+            }
+        }
+
+        private void unlink(int row) {
+            if (older[row] != -1) {
+                newer[older[row]] = newer[row];
+            } else {
+                oldest = newer[row];
+            }
+
+            if (newer[row] != -1) {
+                older[newer[row]] = older[row];
+            } else {
+                newest = older[row];
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package pacman.game.internal;
+
+/*
+ * Answers the shortest path distance queries of a maze (DM.PATH, see Game.getShortestPathDistance(-)). The built-in
+ * mazes use a pre-computed table of all the distances (TableDistanceOracle), whose size grows with the square of the
+ * number of nodes; large mazes can use BfsDistanceOracle instead, which only keeps a bounded number of rows.
+ * Implementations must be safe to query from several threads at once.
+ */
+public interface DistanceOracle {
+    /*
+     * Returns the shortest path distance between two nodes, or -1 if there is no path between them.
+     */
+    int getShortestPathDistance(int fromNodeIndex, int toNodeIndex);
+
+    /*
+     * Writes the distances from one node to each of the first count targets into out, from the offset given on, in the
+     * order of the targets. Implementations look up what they store for the node once rather than once per target.
+     */
+    default void getShortestPathDistances(int fromNodeIndex, int[] toNodeIndices, int count, int[] out, int offset) {
+        for (int i = 0; i < count; i++) {
+            out[offset + i] = getShortestPathDistance(fromNodeIndex, toNodeIndices[i]);
+        }
+    }
+
+    /*
+     * Writes the distances from each of the first fromCount nodes to each of the first toCount targets into out, the
+     * distance from the i-th node to the j-th target at i*toCount+j.
+     */
+    default void getShortestPathDistances(int[] fromNodeIndices, int fromCount, int[] toNodeIndices, int toCount, int[] out) {
+        for (int i = 0; i < fromCount; i++) {
+            getShortestPathDistances(fromNodeIndices[i], toNodeIndices, toCount, out, i * toCount);
+        }
+    }
+
+    /*
+     * Loads whatever is otherwise loaded on first use.
+     */
+    default void prepare() {
+    }
+}
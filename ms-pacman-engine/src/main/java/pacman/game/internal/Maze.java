@@ -1,11 +1,14 @@
 package pacman.game.internal;
 
+import java.io.InputStream;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static pacman.game.Constants.*;
 
+import pacman.game.Constants.MOVE;
+
 //import java.util.EnumMap;
-//import pacman.game.Constants.MOVE;
 
 /*
  * Stores the actual mazes, each of which is simply a connected graph. The differences between the mazes are the connectivity
@@ -14,12 +17,31 @@ import static pacman.game.Constants.*;
  * computed on the fly whenever getNextDir(-) is called.
  */
 public final class Maze {
+    //the distance rows kept for the mazes that have no pre-computed distances
+    private static final int BFS_ROWS = 256;
+
     public AStar astar;
-    public int[] shortestPathDistances, pillIndices, powerPillIndices, junctionIndices;    //Information for the controllers
+    public int[] pillIndices, powerPillIndices, junctionIndices;                           //Information for the controllers
     public int initialPacManNodeIndex, lairNodeIndex, initialGhostNodeIndex;                //Maze-specific information
     public Node[] graph;                                                                //The actual maze, stored as a graph (set of nodes)
     public String name;                                                                    //Name of the Maze
 
+    /*
+     * Flat copies of the adjacency stored in the nodes, for the hot paths of the game. neighbours[node*4+move]
+     * is the node reached by the move or -1, moveMasks[node*5+lastMove] has bit (1 << move) set for every move
+     * available that does not reverse lastMove (NEUTRAL allows all of them) and junctions[node] is 1 for the
+     * nodes with more than two neighbours.
+     */
+    public int[] neighbours, moveMasks;
+    public byte[] junctions;
+    public NextMoveTable nextMoves;                                                        //Greedy PATH moves, built on demand
+    public NearestPillSearch nearestPills;                                                 //Nearest active pill by PATH
+
+    //answers the shortest path distance queries
+    private volatile DistanceOracle distances;
+    //the visibility tables used so far, by partial observability type and sight limit
+    private final ConcurrentHashMap<Long, VisibilityTable> visibilities = new ConcurrentHashMap<Long, VisibilityTable>();
+
     /*
      * Each maze is stored as a (connected) graph: all nodes have neighbours, stored in an array of length 4. The
      * index of the array associates the direction the neighbour is located at: '[up,right,down,left]'.
@@ -28,18 +50,35 @@ public final class Maze {
      * directly to determine the next node to go to.
      */
     public Maze(int index) {
-        loadNodes(nodeNames[index]);
-        loadDistances(distNames[index]);
+        load(getClass().getResourceAsStream(pathMazes + "/" + nodeNames[index] + ".txt"));
+        distances = new TableDistanceOracle(this, distNames[index]);
+    }
+
+    /*
+     * Loads a maze from a stream in the format of the files in data/mazes, such as one written by MazeGenerator. It
+     * has no pre-computed distances, so they are computed as needed by a BfsDistanceOracle; a table written by
+     * pacman.test.GenerateMazes can be used instead with setDistanceOracle(-). The stream is closed.
+     */
+    public Maze(InputStream nodes) {
+        load(nodes);
+        distances = new BfsDistanceOracle(this, BFS_ROWS);
+    }
+
+    private void load(InputStream nodes) {
+        loadNodes(nodes);
+        buildTables();
+        nextMoves = new NextMoveTable(this);
+        nearestPills = new NearestPillSearch(this);
 
         //create A* graph for shortest paths for the ghosts
         astar = new AStar();
         astar.createGraph(graph);
     }
 
-    //Loads all the nodes from files and initialises all maze-specific information.
-    private void loadNodes(String fileName) {
+    //Loads all the nodes from the stream and initialises all maze-specific information.
+    private void loadNodes(InputStream nodes) {
 
-        Scanner scanner = new Scanner(getClass().getResourceAsStream(pathMazes + "/" + fileName + ".txt"));
+        Scanner scanner = new Scanner(nodes);
         String input = scanner.nextLine();
 
         //preamble
@@ -83,24 +122,95 @@ public final class Maze {
 
     }
 
+    //Builds the flat adjacency tables from the graph.
+    private void buildTables() {
+        MOVE[] moves = MOVE.values();
+        int numMoves = moves.length;
+
+        this.neighbours = new int[graph.length * 4];
+        this.moveMasks = new int[graph.length * numMoves];
+        this.junctions = new byte[graph.length];
+
+        for (Node node : graph) {
+            int mask = 0;
+
+            for (int move = 0; move < 4; move++) {
+                Integer neighbour = node.neighbourhood.get(moves[move]);
+
+                neighbours[node.nodeIndex * 4 + move] = neighbour == null ? -1 : neighbour;
+
+                if (neighbour != null) {
+                    mask |= 1 << move;
+                }
+            }
+
+            for (MOVE lastMove : moves) {
+                moveMasks[node.nodeIndex * numMoves + lastMove.ordinal()] =
+                        lastMove == MOVE.NEUTRAL ? mask : mask & ~(1 << lastMove.opposite().ordinal());
+            }
+
+            junctions[node.nodeIndex] = (byte) (node.numNeighbouringNodes > 2 ? 1 : 0);
+        }
+    }
+
+    /*
+     * Loads the parts of the maze that are otherwise loaded on first use (the shortest path distances).
+     */
+    public void prepare() {
+        distances.prepare();
+    }
+
     /*
-     * Loads the shortest path distances which have been pre-computed. The data contains the shortest distance from
-     * any node in the maze to any other node. Since the graph is symmetric, the symmetries have been removed to preserve
-     * memory and all distances are stored in a 1D array; they are looked-up using getDistance(-).
+     * Returns the shortest path distance between two nodes, as given by the distance oracle of the maze.
      */
-    private void loadDistances(String fileName) {
-        this.shortestPathDistances = new int[((graph.length * (graph.length - 1)) / 2) + graph.length];
+    public int getShortestPathDistance(int fromNodeIndex, int toNodeIndex) {
+        return distances.getShortestPathDistance(fromNodeIndex, toNodeIndex);
+    }
 
-        Scanner scanner = new Scanner(getClass().getResourceAsStream(pathDistances + "/" + fileName));
-        //        BufferedReader br = new BufferedReader(new InputStreamReader(ClassLoader.getSystemClassLoader().getResourceAsStream(pathDistances + System.getProperty("file.separator") + fileName)));
-        String input;
-        int index = 0;
+    /*
+     * Writes the shortest path distances from a node to each of the first count targets into out, see DistanceOracle.
+     */
+    public void getShortestPathDistances(int fromNodeIndex, int[] toNodeIndices, int count, int[] out) {
+        distances.getShortestPathDistances(fromNodeIndex, toNodeIndices, count, out, 0);
+    }
 
-        while (scanner.hasNextLine()) {
-            input = scanner.nextLine();
-            shortestPathDistances[index++] = Integer.parseInt(input);
+    /*
+     * Writes the shortest path distances from each of the first nodes to each of the first targets into out, see
+     * DistanceOracle.
+     */
+    public void getShortestPathDistances(int[] fromNodeIndices, int fromCount, int[] toNodeIndices, int toCount, int[] out) {
+        distances.getShortestPathDistances(fromNodeIndices, fromCount, toNodeIndices, toCount, out);
+    }
+
+    public DistanceOracle getDistanceOracle() {
+        return distances;
+    }
+
+    /*
+     * Replaces the way the shortest path distances are computed, for instance by a BfsDistanceOracle to save memory.
+     * It must give the same distances as the oracle it replaces: the paths caches have been built with them.
+     */
+    public void setDistanceOracle(DistanceOracle distances) {
+        this.distances = distances;
+    }
+
+    /*
+     * Returns the table of the nodes visible from every node under the partial observability type and sight limit
+     * given, creating it the first time it is asked for.
+     */
+    public VisibilityTable getVisibility(final POType poType, final int sightLimit) {
+        long key = ((long) sightLimit << 8) | poType.ordinal();
+        VisibilityTable visibility = visibilities.get(key);
+
+        if (visibility == null) {
+            visibility = new VisibilityTable(this, poType, sightLimit);
+            VisibilityTable existing = visibilities.putIfAbsent(key, visibility);
+
+            if (existing != null) {
+                visibility = existing;
+            }
         }
 
-        scanner.close();
+        return visibility;
     }
-}
\ No newline at end of file
+}
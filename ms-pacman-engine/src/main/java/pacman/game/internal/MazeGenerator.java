@@ -0,0 +1,370 @@
+package pacman.game.internal;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * Generates mazes of any size in the format of the files in data/mazes (see the readme there). A maze starts as a
+ * lattice of columns x rows points, spacing nodes apart, joined by straight corridors. Corridors are then removed at
+ * random, in mirrored pairs since the mazes of the game are symmetric, as long as the maze stays connected, keeps a
+ * junction and no point is left with fewer than two corridors, so there are no dead ends. The lair is a node of its own
+ * inside the middle of the maze, with the ghosts starting from the closest corridor and Ms Pac-Man from a corridor below
+ * it. The power pills are in the corners and every fourth node along the corridors has a pill. There are no tunnels.
+ */
+public final class MazeGenerator {
+    //the share of the corridors of the lattice that are removed, when the maze allows it
+    private static final double REMOVED_CORRIDORS = 0.35;
+    //node indices are stored in 16 bits by the paths caches and by the game
+    private static final int MAX_NODES = 1 << 16;
+    //the blank space around the maze, as in the built-in mazes
+    private static final int MARGIN = 4;
+    private static final int PILL_SPACING = 4;
+
+    private final int columns, rows, spacing;
+
+    public MazeGenerator(int columns, int rows, int spacing) {
+        if (columns < 3 || rows < 3) {
+            throw new IllegalArgumentException("The lattice must have at least 3 columns and rows: " + columns + "x" + rows);
+        }
+        if (spacing < 2) {
+            throw new IllegalArgumentException("The spacing must be at least 2: " + spacing);
+        }
+
+        this.columns = columns;
+        this.rows = rows;
+        this.spacing = spacing;
+    }
+
+    /*
+     * A generator of square mazes of about the given number of nodes.
+     */
+    public static MazeGenerator ofSize(int numNodes, int spacing) {
+        double nodesPerPoint = 1 + 2 * (1 - REMOVED_CORRIDORS) * (spacing - 1);
+        int side = Math.max(3, (int) Math.round(Math.sqrt(numNodes / nodesPerPoint)));
+
+        return new MazeGenerator(side, side, spacing);
+    }
+
+    /*
+     * Generates a maze and loads it. Its distances are computed when needed; see Maze.setDistanceOracle(-) to use
+     * a table written by pacman.test.GenerateMazes instead.
+     */
+    public Maze generateMaze(String name, long seed) {
+        return new Maze(new ByteArrayInputStream(generate(name, seed).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /*
+     * Generates a maze and returns it in the text format of the maze files. The same seed gives the same maze. Throws
+     * an IllegalArgumentException if the maze has more nodes than fit in 16 bits.
+     */
+    public String generate(String name, long seed) {
+        boolean[] removed = removeCorridors(new Random(seed));
+
+        int width = 2 * MARGIN + (columns - 1) * spacing + 1;
+        int height = 2 * MARGIN + (rows - 1) * spacing + 1;
+        boolean[] corridors = new boolean[width * height];
+
+        for (int edge = 0; edge < numEdges(); edge++) {
+            if (!removed[edge]) {
+                int a = edgeFrom(edge), b = edgeTo(edge);
+                int dx = Integer.signum(pointX(b) - pointX(a)), dy = Integer.signum(pointY(b) - pointY(a));
+
+                for (int k = 0; k <= spacing; k++) {
+                    corridors[(pointY(a) + k * dy) * width + pointX(a) + k * dx] = true;
+                }
+            }
+        }
+
+        //the node at each position, numbered row by row as in the built-in mazes, or -1
+        int[] nodeAt = new int[width * height];
+        int numNodes = 0;
+
+        for (int i = 0; i < nodeAt.length; i++) {
+            nodeAt[i] = corridors[i] ? numNodes++ : -1;
+        }
+
+        //the nodes of the maze: the corridors, and the lair that comes after them
+        int totalNodes = numNodes + 1;
+
+        if (totalNodes > MAX_NODES) {
+            throw new IllegalArgumentException("Maze " + name + " has more than " + MAX_NODES + " nodes: " + totalNodes);
+        }
+
+        int[] xs = new int[totalNodes], ys = new int[totalNodes];
+        int[] neighbours = new int[totalNodes * 4];
+
+        Arrays.fill(neighbours, -1);
+
+        for (int i = 0; i < nodeAt.length; i++) {
+            int node = nodeAt[i];
+
+            if (node != -1) {
+                int x = i % width, y = i / width;
+
+                xs[node] = x;
+                ys[node] = y;
+                //up, right, down and left, as the moves
+                neighbours[node * 4] = y > 0 ? nodeAt[i - width] : -1;
+                neighbours[node * 4 + 1] = x < width - 1 ? nodeAt[i + 1] : -1;
+                neighbours[node * 4 + 2] = y < height - 1 ? nodeAt[i + width] : -1;
+                neighbours[node * 4 + 3] = x > 0 ? nodeAt[i - 1] : -1;
+            }
+        }
+
+        //the lair is in the middle of a square of the lattice, so it is not next to any corridor, and comes last
+        int lair = numNodes++;
+        int middle = (rows - 1) / 2 * columns + (columns - 1) / 2;
+
+        xs[lair] = pointX(middle) + spacing / 2;
+        ys[lair] = pointY(middle) + spacing / 2;
+
+        int ghostStart = closest(xs[lair], ys[lair], xs, ys, neighbours, lair, -1, false);
+        int pacManStart = closest(xs[lair], ys[lair] + spacing, xs, ys, neighbours, lair, ghostStart, true);
+
+        boolean[] powerPills = new boolean[numNodes];
+
+        for (int corner : new int[]{0, columns - 1, (rows - 1) * columns, rows * columns - 1}) {
+            powerPills[nodeAt[pointY(corner) * width + pointX(corner)]] = true;
+        }
+
+        int numPills = 0;
+        int numPowerPills = 0;
+        int numJunctions = 0;
+        StringBuilder nodes = new StringBuilder(numNodes * 32);
+
+        for (int node = 0; node < numNodes; node++) {
+            int pill = -1;
+            int powerPill = -1;
+
+            if (powerPills[node]) {
+                powerPill = numPowerPills++;
+            } else if (node != lair && node != ghostStart && node != pacManStart
+                    && (xs[node] + ys[node] - 2 * MARGIN) % PILL_SPACING == 0) {
+                pill = numPills++;
+            }
+
+            if (degree(neighbours, node) > 2) {
+                numJunctions++;
+            }
+
+            nodes.append(node).append('\t').append(xs[node]).append('\t').append(ys[node]);
+
+            for (int move = 0; move < 4; move++) {
+                nodes.append('\t').append(neighbours[node * 4 + move]);
+            }
+
+            nodes.append('\t').append(pill).append('\t').append(powerPill).append('\n');
+        }
+
+        return name + '\t' + pacManStart + '\t' + lair + '\t' + ghostStart + '\t' + numNodes + '\t' + numPills + '\t'
+                + numPowerPills + '\t' + numJunctions + '\n' + nodes;
+    }
+
+    /*
+     * The node closest to the position given that is not a junction nor the node excluded, optionally only among
+     * those with neighbours to the left and to the right. The first of the closest nodes is taken.
+     */
+    private static int closest(int x, int y, int[] xs, int[] ys, int[] neighbours, int numNodes, int excluded, boolean horizontal) {
+        int closest = -1;
+        long minDistance = Long.MAX_VALUE;
+
+        for (int node = 0; node < numNodes; node++) {
+            if (node == excluded || degree(neighbours, node) > 2
+                    || (horizontal && (neighbours[node * 4 + 1] == -1 || neighbours[node * 4 + 3] == -1))) {
+                continue;
+            }
+
+            long dx = xs[node] - x, dy = ys[node] - y;
+            long distance = dx * dx + dy * dy;
+
+            if (distance < minDistance) {
+                minDistance = distance;
+                closest = node;
+            }
+        }
+
+        if (closest == -1) {
+            throw new IllegalStateException("No node to start from near " + x + "," + y);
+        }
+
+        return closest;
+    }
+
+    /*
+     * Removes corridors from the lattice, trying them in a random order, and returns the corridors removed.
+     */
+    private boolean[] removeCorridors(Random random) {
+        int numEdges = numEdges();
+        boolean[] removed = new boolean[numEdges];
+        int[] degrees = new int[columns * rows];
+
+        for (int edge = 0; edge < numEdges; edge++) {
+            degrees[edgeFrom(edge)]++;
+            degrees[edgeTo(edge)]++;
+        }
+
+        //one corridor of each mirrored pair, shuffled
+        int[] candidates = new int[numEdges];
+        int numCandidates = 0;
+
+        for (int edge = 0; edge < numEdges; edge++) {
+            if (edge <= mirror(edge)) {
+                candidates[numCandidates++] = edge;
+            }
+        }
+
+        for (int i = numCandidates - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = candidates[i];
+            candidates[i] = candidates[j];
+            candidates[j] = tmp;
+        }
+
+        int target = (int) (numEdges * REMOVED_CORRIDORS);
+        int numRemoved = 0;
+        int[] queue = new int[columns * rows];
+        boolean[] visited = new boolean[columns * rows];
+
+        for (int i = 0; i < numCandidates && numRemoved < target; i++) {
+            int edge = candidates[i];
+            int pair = mirror(edge);
+
+            setRemoved(edge, true, removed, degrees);
+
+            if (pair != edge) {
+                setRemoved(pair, true, removed, degrees);
+            }
+
+            if (degrees[edgeFrom(edge)] >= 2 && degrees[edgeTo(edge)] >= 2 && degrees[edgeFrom(pair)] >= 2
+                    && degrees[edgeTo(pair)] >= 2 && hasJunction(degrees) && isConnected(removed, queue, visited)) {
+                numRemoved += pair == edge ? 1 : 2;
+            } else {
+                setRemoved(edge, false, removed, degrees);
+
+                if (pair != edge) {
+                    setRemoved(pair, false, removed, degrees);
+                }
+            }
+        }
+
+        return removed;
+    }
+
+    private void setRemoved(int edge, boolean remove, boolean[] removed, int[] degrees) {
+        int change = remove ? -1 : 1;
+
+        removed[edge] = remove;
+        degrees[edgeFrom(edge)] += change;
+        degrees[edgeTo(edge)] += change;
+    }
+
+    private static boolean hasJunction(int[] degrees) {
+        for (int degree : degrees) {
+            if (degree > 2) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    //breadth-first search of the points of the lattice from the first one
+    private boolean isConnected(boolean[] removed, int[] queue, boolean[] visited) {
+        Arrays.fill(visited, false);
+
+        int head = 0, tail = 0;
+        queue[tail++] = 0;
+        visited[0] = true;
+
+        while (head < tail) {
+            int point = queue[head++];
+            int column = point % columns, row = point / columns;
+
+            for (int move = 0; move < 4; move++) {
+                int edge = edgeAt(column, row, move);
+
+                if (edge != -1 && !removed[edge]) {
+                    int next = edgeFrom(edge) == point ? edgeTo(edge) : edgeFrom(edge);
+
+                    if (!visited[next]) {
+                        visited[next] = true;
+                        queue[tail++] = next;
+                    }
+                }
+            }
+        }
+
+        return tail == columns * rows;
+    }
+
+    /*
+     * The corridors of the lattice: the horizontal ones first, numbered row by row, from a point to the one on its
+     * right, then the vertical ones, from a point to the one below it. Points are numbered row by row.
+     */
+    private int numEdges() {
+        return (columns - 1) * rows + columns * (rows - 1);
+    }
+
+    private int numHorizontal() {
+        return (columns - 1) * rows;
+    }
+
+    private int edgeFrom(int edge) {
+        if (edge < numHorizontal()) {
+            return edge / (columns - 1) * columns + edge % (columns - 1);
+        }
+
+        return edge - numHorizontal();
+    }
+
+    private int edgeTo(int edge) {
+        return edge < numHorizontal() ? edgeFrom(edge) + 1 : edgeFrom(edge) + columns;
+    }
+
+    //the corridor leaving the point with the move (up, right, down or left), or -1
+    private int edgeAt(int column, int row, int move) {
+        switch (move) {
+            case 0:
+                return row > 0 ? numHorizontal() + (row - 1) * columns + column : -1;
+            case 1:
+                return column < columns - 1 ? row * (columns - 1) + column : -1;
+            case 2:
+                return row < rows - 1 ? numHorizontal() + row * columns + column : -1;
+            default:
+                return column > 0 ? row * (columns - 1) + column - 1 : -1;
+        }
+    }
+
+    //the corridor on the other side of the vertical axis of the maze
+    private int mirror(int edge) {
+        if (edge < numHorizontal()) {
+            int row = edge / (columns - 1), column = edge % (columns - 1);
+            return row * (columns - 1) + columns - 2 - column;
+        }
+
+        int point = edge - numHorizontal();
+        return numHorizontal() + point - point % columns + columns - 1 - point % columns;
+    }
+
+    private int pointX(int point) {
+        return MARGIN + point % columns * spacing;
+    }
+
+    private int pointY(int point) {
+        return MARGIN + point / columns * spacing;
+    }
+
+    private static int degree(int[] neighbours, int node) {
+        int degree = 0;
+
+        for (int move = 0; move < 4; move++) {
+            if (neighbours[node * 4 + move] != -1) {
+                degree++;
+            }
+        }
+
+        return degree;
+    }
+}
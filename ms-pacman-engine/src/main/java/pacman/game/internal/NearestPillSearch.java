@@ -0,0 +1,125 @@
+package pacman.game.internal;
+
+import java.util.Arrays;
+
+/*
+ * Finds the active pill closest to a node along the paths of the maze (DM.PATH) with a breadth-first search that stops
+ * at the first distance a pill is found at, so a query only visits the nodes closer than the nearest pill: the corridors
+ * keep the frontier of the search narrow. The pills are given as the bit words of the state of the game. Among the pills
+ * at the same distance, the one with the lowest pill index is chosen, and pills come before power pills, which is the
+ * pill that Game.getClosestNodeIndexFromNodeIndex(-) picks from the active pills followed by the active power pills.
+ *
+ * As in AStar, the maze is immutable and the state of a search lives in a workspace owned by the calling thread.
+ */
+public final class NearestPillSearch {
+    private final int[] neighbours;
+    //the pill and the power pill at each node, or -1
+    private final int[] pillOfNode, powerPillOfNode;
+    private final int numPills;
+
+    private final ThreadLocal<Workspace> workspaces = new ThreadLocal<Workspace>() {
+        @Override
+        protected Workspace initialValue() {
+            return new Workspace(pillOfNode.length);
+        }
+    };
+
+    public NearestPillSearch(Maze maze) {
+        this.neighbours = maze.neighbours;
+        this.pillOfNode = new int[maze.graph.length];
+        this.powerPillOfNode = new int[maze.graph.length];
+        this.numPills = maze.pillIndices.length;
+
+        for (Node node : maze.graph) {
+            pillOfNode[node.nodeIndex] = node.pillIndex;
+            powerPillOfNode[node.nodeIndex] = node.powerPillIndex;
+        }
+    }
+
+    /*
+     * Returns the node of the nearest active pill, or -1 if there is none that can be reached. The pills are the bits
+     * of state from pillsOffset on; the power pills are only searched for if powerPillsOffset is not -1.
+     */
+    public int find(int fromNodeIndex, int[] state, int pillsOffset, int powerPillsOffset) {
+        Workspace ws = workspaces.get();
+        int mark = ws.nextMark();
+        int head = 0, tail = 0;
+
+        ws.queue[tail++] = fromNodeIndex;
+        ws.marks[fromNodeIndex] = mark;
+
+        while (head < tail) {
+            int layerEnd = tail;
+            int nearest = -1;
+            int nearestKey = Integer.MAX_VALUE;
+
+            //the pills at this distance
+            for (int i = head; i < layerEnd; i++) {
+                int node = ws.queue[i];
+                int key = key(node, state, pillsOffset, powerPillsOffset);
+
+                if (key < nearestKey) {
+                    nearestKey = key;
+                    nearest = node;
+                }
+            }
+
+            if (nearest != -1) {
+                return nearest;
+            }
+
+            //the next distance
+            for (; head < layerEnd; head++) {
+                int node = ws.queue[head];
+
+                for (int move = 0; move < 4; move++) {
+                    int next = neighbours[node * 4 + move];
+
+                    if (next != -1 && ws.marks[next] != mark) {
+                        ws.marks[next] = mark;
+                        ws.queue[tail++] = next;
+                    }
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    //the order among the pills at the same distance, or MAX_VALUE if there is no active pill at the node
+    private int key(int node, int[] state, int pillsOffset, int powerPillsOffset) {
+        int pill = pillOfNode[node];
+
+        if (pill >= 0 && (state[pillsOffset + (pill >>> 5)] & (1 << pill)) != 0) {
+            return pill;
+        }
+
+        int powerPill = powerPillOfNode[node];
+
+        if (powerPill >= 0 && powerPillsOffset != -1 && (state[powerPillsOffset + (powerPill >>> 5)] & (1 << powerPill)) != 0) {
+            return numPills + powerPill;
+        }
+
+        return Integer.MAX_VALUE;
+    }
+
+    private static final class Workspace {
+        //the nodes queued by the current search are marked with its number, so nothing needs clearing
+        final int[] marks, queue;
+        int mark;
+
+        Workspace(int numNodes) {
+            marks = new int[numNodes];
+            queue = new int[numNodes];
+        }
+
+        int nextMark() {
+            if (mark == Integer.MAX_VALUE) {
+                Arrays.fill(marks, 0);
+                mark = 0;
+            }
+
+            return ++mark;
+        }
+    }
+}
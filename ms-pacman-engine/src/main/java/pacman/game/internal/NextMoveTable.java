@@ -0,0 +1,81 @@
+package pacman.game.internal;
+
+import pacman.game.Constants.MOVE;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * The greedy next move towards and away from every target, using the shortest path distance of the neighbours
+ * (DM.PATH) and excluding the reverse of the last move made. The moves are those chosen by the approximate next move
+ * methods of the game, ties included: the first best move in MOVE order. A row holds the moves to one target for every
+ * node and last move, at [node*5+lastMove], with the move towards in the low 4 bits and the move away in the high 4 bits.
+ * Rows are built on first use and published atomically, so the table can be shared by games on different threads.
+ */
+public final class NextMoveTable {
+    //stored when a node has no possible move
+    public static final int NONE = 0xF;
+
+    private static final int NUM_MOVES = MOVE.values().length;
+
+    private final Maze maze;
+    private final AtomicReferenceArray<byte[]> rows;
+
+    public NextMoveTable(Maze maze) {
+        this.maze = maze;
+        this.rows = new AtomicReferenceArray<byte[]>(maze.graph.length);
+    }
+
+    //the move towards the target, or NONE
+    public int getMoveTowards(int fromNodeIndex, int toNodeIndex, int lastMove) {
+        return getRow(toNodeIndex)[fromNodeIndex * NUM_MOVES + lastMove] & 0xF;
+    }
+
+    //the move away from the target, or NONE
+    public int getMoveAway(int fromNodeIndex, int toNodeIndex, int lastMove) {
+        return (getRow(toNodeIndex)[fromNodeIndex * NUM_MOVES + lastMove] >>> 4) & 0xF;
+    }
+
+    private byte[] getRow(int toNodeIndex) {
+        byte[] row = rows.get(toNodeIndex);
+
+        if (row == null) {
+            row = buildRow(toNodeIndex);
+            //another thread may have built the same row in the meantime; both are identical
+            rows.lazySet(toNodeIndex, row);
+        }
+
+        return row;
+    }
+
+    private byte[] buildRow(int toNodeIndex) {
+        byte[] row = new byte[maze.graph.length * NUM_MOVES];
+        int[] distances = new int[4];
+
+        for (int node = 0; node < maze.graph.length; node++) {
+            for (int move = 0; move < 4; move++) {
+                int neighbour = maze.neighbours[node * 4 + move];
+                distances[move] = neighbour == -1 ? 0 : maze.getShortestPathDistance(neighbour, toNodeIndex);
+            }
+
+            for (int lastMove = 0; lastMove < NUM_MOVES; lastMove++) {
+                int towards = NONE;
+                int away = NONE;
+
+                for (int moves = maze.moveMasks[node * NUM_MOVES + lastMove]; moves != 0; moves &= moves - 1) {
+                    int move = Integer.numberOfTrailingZeros(moves);
+
+                    if (towards == NONE || distances[move] < distances[towards]) {
+                        towards = move;
+                    }
+                    if (away == NONE || distances[move] > distances[away]) {
+                        away = move;
+                    }
+                }
+
+                row[node * NUM_MOVES + lastMove] = (byte) (towards | (away << 4));
+            }
+        }
+
+        return row;
+    }
+}
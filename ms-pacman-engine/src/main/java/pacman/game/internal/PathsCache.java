@@ -2,8 +2,17 @@ package pacman.game.internal;
 
 import pacman.game.Constants.MOVE;
 import pacman.game.Game;
+import pacman.game.IntPathView;
 
+import java.io.*;
 import java.util.*;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static pacman.game.Constants.NUM_MAZES;
+import static pacman.game.Constants.nodeNames;
+import static pacman.game.Constants.pathCaches;
 
 /*
  * Pre-computes paths for more efficient execution of the game. It is a tradeoff between loading times, execution speed,
@@ -26,7 +35,180 @@ public class PathsCache {
     public Junction[] junctions;
     public Game game;
 
+    /*
+     * Flat copies of the above for getPathDistanceFromA2B(-), which only needs lengths. junctionIds[node] is the index
+     * of a junction node and -1 otherwise. Each node has at most two closest junctions (one for a junction: itself),
+     * stored at node*2+k with -1 in nearJunctions for the missing ones, along with the length of the path to them, the
+     * first and last moves of that path, the move that leads from the junction back towards the node and the length
+     * of the part of the reverse path that ends at the node. junctionDistances[(from*J+to)*4+move] is the length of
+     * the path from junction to junction that starts with the move, or -1.
+     */
+    private int[] junctionIds, nearJunctions, nearDistances, nearReverseDistances;
+    private int[][] nearPaths;
+    private byte[] nearFirstMoves, nearLastMoves, nearMovesBack;
+    private int[] junctionDistances;
+    private int numJunctions;
+
+    //identifies the files written by write(-) and the version of their layout
+    private static final int MAGIC = 0x50434348;
+    private static final int VERSION = 1;
+
     public PathsCache(int mazeIndex) {
+        Maze m = setMaze(mazeIndex);
+
+        nodes = assignJunctionsToNodes(game);
+        junctions = junctionDistances(game);
+
+        for (int i = 0; i < junctions.length; i++) {
+            junctions[i].computeShortestPaths();
+        }
+
+        buildDistanceTables(m);
+    }
+
+    //reads a cache written by write(-); throws an IOException if it was written for a different maze
+    private PathsCache(int mazeIndex, DataInputStream in) throws IOException {
+        Maze m = setMaze(mazeIndex);
+
+        if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != m.graph.length
+                || in.readInt() != m.junctionIndices.length || in.readInt() != Arrays.hashCode(m.neighbours)) {
+            throw new IOException("The paths cache does not match maze " + m.name);
+        }
+
+        nodes = new DNode[m.graph.length];
+
+        for (int i = 0; i < nodes.length; i++) {
+            boolean isJunction = in.readBoolean();
+            nodes[i] = new DNode(i, isJunction);
+
+            if (!isJunction) {
+                int numJunctions = in.readUnsignedByte();
+
+                for (int j = 0; j < numJunctions; j++) {
+                    int junctionID = in.readUnsignedShort();
+                    MOVE firstMove = MOVE.values()[in.readUnsignedByte()];
+                    MOVE lastMove = MOVE.values()[in.readUnsignedByte()];
+                    nodes[i].addPath(junctionID, firstMove, i, readPath(in), lastMove);
+                }
+            }
+        }
+
+        junctions = new Junction[m.junctionIndices.length];
+
+        for (int q = 0; q < junctions.length; q++) {
+            junctions[q] = new Junction(q, m.junctionIndices[q], junctions.length);
+
+            for (int z = 0; z < junctions.length; z++) {
+                int moves = in.readUnsignedByte();
+
+                for (int move = 0; move < 4; move++) {
+                    if ((moves & (1 << move)) != 0) {
+                        junctions[q].addPath(z, MOVE.values()[move], readPath(in));
+                    }
+                }
+            }
+
+            junctions[q].computeShortestPaths();
+        }
+
+        buildDistanceTables(m);
+    }
+
+    /*
+     * Returns the cache of the maze given: it is read from the resource written by write(-) if there is one for the
+     * maze (see Constants.pathCaches), and computed otherwise, as it is for the mazes added to the game.
+     */
+    public static PathsCache load(int mazeIndex) {
+        if (mazeIndex >= NUM_MAZES) {
+            return new PathsCache(mazeIndex);
+        }
+
+        InputStream resource = PathsCache.class.getResourceAsStream(pathCaches + "/" + nodeNames[mazeIndex] + ".bin");
+
+        if (resource != null) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(resource)))) {
+                return new PathsCache(mazeIndex, in);
+            } catch (IOException e) {
+                System.err.println("Could not read the paths cache of maze " + mazeIndex + ", computing it: " + e.getMessage());
+            }
+        }
+
+        return new PathsCache(mazeIndex);
+    }
+
+    /*
+     * Writes the junction paths and the paths from every node to its closest junctions, gzipped, so that load(-) can
+     * read them instead of running A* for every pair of junctions. See pacman.test.WritePathsCaches.
+     */
+    public void write(OutputStream out) throws IOException {
+        Maze m = game.getCurrentMaze();
+        GZIPOutputStream zip = new GZIPOutputStream(out);
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(zip));
+
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(m.graph.length);
+        data.writeInt(m.junctionIndices.length);
+        data.writeInt(Arrays.hashCode(m.neighbours));
+
+        for (DNode node : nodes) {
+            data.writeBoolean(node.isJunction);
+
+            if (!node.isJunction) {
+                data.writeByte(node.closestJunctions.size());
+
+                for (JunctionData junction : node.closestJunctions) {
+                    data.writeShort(junction.nodeID);
+                    data.writeByte(junction.firstMove.ordinal());
+                    data.writeByte(junction.lastMove.ordinal());
+                    writePath(data, junction.path);
+                }
+            }
+        }
+
+        for (Junction junction : junctions) {
+            for (EnumMap<MOVE, int[]> paths : junction.paths) {
+                int moves = 0;
+
+                for (MOVE move : paths.keySet()) {
+                    if (move != MOVE.NEUTRAL) {
+                        moves |= 1 << move.ordinal();
+                    }
+                }
+
+                data.writeByte(moves);
+
+                for (Map.Entry<MOVE, int[]> entry : paths.entrySet()) {
+                    if (entry.getKey() != MOVE.NEUTRAL) {
+                        writePath(data, entry.getValue());
+                    }
+                }
+            }
+        }
+
+        data.flush();
+        zip.finish();
+    }
+
+    private static void writePath(DataOutputStream out, int[] path) throws IOException {
+        out.writeShort(path.length);
+
+        for (int node : path) {
+            out.writeShort(node);
+        }
+    }
+
+    private static int[] readPath(DataInputStream in) throws IOException {
+        int[] path = new int[in.readUnsignedShort()];
+
+        for (int i = 0; i < path.length; i++) {
+            path[i] = in.readUnsignedShort();
+        }
+
+        return path;
+    }
+
+    private Maze setMaze(int mazeIndex) {
         junctionIndexConverter = new HashMap<Integer, Integer>();
 
         this.game = new Game(0, mazeIndex);
@@ -38,19 +220,21 @@ public class PathsCache {
             junctionIndexConverter.put(jctIndices[i], i);
         }
 
-        nodes = assignJunctionsToNodes(game);
-        junctions = junctionDistances(game);
-
-        for (int i = 0; i < junctions.length; i++) {
-            junctions[i].computeShortestPaths();
-        }
+        return m;
     }
 
     //for Ms Pac-Man
     public int[] getPathFromA2B(int a, int b) {
+        return getPathFromA2B(a, b, new IntPathView()).toArray();
+    }
+
+    //fills the view given with the stored segments of the path instead of copying them
+    public IntPathView getPathFromA2B(int a, int b, IntPathView view) {
+        view.clear();
+
         //not going anywhere
         if (a == b) {
-            return new int[]{};
+            return view;
         }
 
         //junctions near the source
@@ -60,7 +244,8 @@ public class PathsCache {
         for (int w = 0; w < closestFromJunctions.size(); w++) {
             for (int i = 0; i < closestFromJunctions.get(w).path.length; i++) {
                 if (closestFromJunctions.get(w).path[i] == b) {
-                    return Arrays.copyOf(closestFromJunctions.get(w).path, i + 1);
+                    view.append(closestFromJunctions.get(w).path, i + 1);
+                    return view;
                 }
             }
         }
@@ -78,8 +263,8 @@ public class PathsCache {
                 //to the first junction
                 int distance = closestFromJunctions.get(i).path.length;
                 //junction to junction
-                int[] tmpPath = junctions[junctionIndexConverter.get(closestFromJunctions.get(i).nodeID)]
-                        .paths[junctionIndexConverter.get(closestToJunctions.get(j).nodeID)].get(MOVE.NEUTRAL);
+                int[] tmpPath = junctions[junctionIds[closestFromJunctions.get(i).nodeID]]
+                        .paths[junctionIds[closestToJunctions.get(j).nodeID]].get(MOVE.NEUTRAL);
                 distance += tmpPath.length;
                 //to the second junction
                 distance += closestToJunctions.get(j).path.length;
@@ -93,20 +278,98 @@ public class PathsCache {
             }
         }
 
-        return concat(closestFromJunctions.get(minFrom).path, shortestPath, closestToJunctions.get(minTo).reversePath);
+        view.append(closestFromJunctions.get(minFrom).path, closestFromJunctions.get(minFrom).path.length);
+        view.append(shortestPath, shortestPath.length);
+        view.append(closestToJunctions.get(minTo).reversePath, closestToJunctions.get(minTo).reversePath.length);
+        return view;
     }
 
     /////// ghosts //////////
 
-    //To be made more efficient shortly.
+    //Same as getPathFromA2B(a, b, lastMoveMade).length, without building the path.
     public int getPathDistanceFromA2B(int a, int b, MOVE lastMoveMade) {
-        return getPathFromA2B(a, b, lastMoveMade).length;
+        //not going anywhere
+        if (a == b) {
+            return 0;
+        }
+
+        int lastMove = lastMoveMade.ordinal();
+
+        //first, go to closest junction (there is only one since we can't reverse)
+        int from = -1;
+
+        if (junctionIds[a] != -1) {
+            from = a * 2;
+        } else {
+            for (int k = a * 2; k < a * 2 + 2; k++) {
+                if (nearJunctions[k] != -1 && nearFirstMoves[k] != opposite(lastMove)
+                        && (from == -1 || nearDistances[k] < nearDistances[from])) {
+                    from = k;
+                }
+            }
+        }
+
+        if (from == -1) {
+            return getPathFromA2B(a, b, lastMoveMade).length;
+        }
+
+        //if target is on the way to junction, then we are done
+        int[] path = nearPaths[from];
+
+        for (int i = 0; i < path.length; i++) {
+            if (path[i] == b) {
+                return i + 1;
+            }
+        }
+
+        int junctionFromId = junctionIds[nearJunctions[from]];
+        int moveEnteredJunction = nearLastMoves[from] == MOVE.NEUTRAL.ordinal() ? lastMove : nearLastMoves[from];
+
+        //now the 1 or 2 target junctions that enclose the target point
+        int minDist = Integer.MAX_VALUE;
+
+        for (int q = b * 2; q < b * 2 + 2 && nearJunctions[q] != -1; q++) {
+            int junctionToId = junctionIds[nearJunctions[q]];
+
+            if (junctionFromId == junctionToId) {
+                if (nearMovesBack[q] != opposite(moveEnteredJunction)) {
+                    minDist = nearReverseDistances[q];
+                }
+            } else {
+                int offset = (junctionFromId * numJunctions + junctionToId) * 4;
+
+                for (int move = 0; move < 4; move++) {
+                    int distance = junctionDistances[offset + move];
+
+                    if (distance != -1 && opposite(move) != moveEnteredJunction && distance + nearDistances[q] < minDist) {
+                        minDist = distance + nearDistances[q];
+                    }
+                }
+            }
+        }
+
+        if (minDist == Integer.MAX_VALUE) {
+            return getPathFromA2B(a, b, lastMoveMade).length;
+        }
+
+        return nearDistances[from] + minDist;
+    }
+
+    private static int opposite(int move) {
+        return move == MOVE.NEUTRAL.ordinal() ? move : (move + 2) & 3;
     }
 
     public int[] getPathFromA2B(int a, int b, MOVE lastMoveMade) {
+        return getPathFromA2B(a, b, lastMoveMade, new IntPathView()).toArray();
+    }
+
+    //fills the view given with the stored segments of the path instead of copying them
+    public IntPathView getPathFromA2B(int a, int b, MOVE lastMoveMade, IntPathView view) {
+        view.clear();
+
         //not going anywhere
         if (a == b) {
-            return new int[]{};
+            return view;
         }
 
         //first, go to closest junction (there is only one since we can't reverse)
@@ -115,13 +378,14 @@ public class PathsCache {
         //if target is on the way to junction, then we are done
         for (int i = 0; i < fromJunction.path.length; i++) {
             if (fromJunction.path[i] == b) {
-                return Arrays.copyOf(fromJunction.path, i + 1);
+                view.append(fromJunction.path, i + 1);
+                return view;
             }
         }
 
         //we have reached a junction, fromJunction, which we entered with moveEnteredJunction
         int junctionFrom = fromJunction.nodeID;
-        int junctionFromId = junctionIndexConverter.get(junctionFrom);
+        int junctionFromId = junctionIds[junctionFrom];
         MOVE moveEnteredJunction = fromJunction.lastMove.equals(MOVE.NEUTRAL) ? lastMoveMade : fromJunction.lastMove; //if we are at a junction, consider last move instead
 
         //now we need to get the 1 or 2 target junctions that enclose the target point
@@ -129,12 +393,13 @@ public class PathsCache {
 
         int minDist = Integer.MAX_VALUE;
         int[] shortestPath = null;
+        int shortestLength = 0;
         int closestJunction = -1;
 
         boolean onTheWay = false;
 
         for (int q = 0; q < junctionsTo.size(); q++) {
-            int junctionToId = junctionIndexConverter.get(junctionsTo.get(q).nodeID);
+            int junctionToId = junctionIds[junctionsTo.get(q).nodeID];
 
             if (junctionFromId == junctionToId) {
                 if (!game.getMoveToMakeToReachDirectNeighbour(junctionFrom, junctionsTo.get(q).reversePath[0]).equals(moveEnteredJunction.opposite())) {
@@ -147,8 +412,9 @@ public class PathsCache {
                         }
                     }
 
-                    shortestPath = Arrays.copyOf(reversepath, cutoff + 1);
-                    minDist = shortestPath.length;
+                    shortestPath = reversepath;
+                    shortestLength = cutoff + 1;
+                    minDist = shortestLength;
                     closestJunction = q;
                     onTheWay = true;
                 }
@@ -164,6 +430,7 @@ public class PathsCache {
                         {
                             minDist = path.length + junctionsTo.get(q).path.length;
                             shortestPath = path;
+                            shortestLength = path.length;
                             closestJunction = q;
                             onTheWay = false;
                         }
@@ -172,22 +439,89 @@ public class PathsCache {
             }
         }
 
+        view.append(fromJunction.path, fromJunction.path.length);
+        view.append(shortestPath, shortestLength);
+
         if (!onTheWay) {
-            return concat(fromJunction.path, shortestPath, junctionsTo.get(closestJunction).reversePath);
-        } else {
-            return concat(fromJunction.path, shortestPath);
+            view.append(junctionsTo.get(closestJunction).reversePath, junctionsTo.get(closestJunction).reversePath.length);
         }
-        //			return concat(fromJunction.path, junctionsTo.get(closestJunction).reversePath);
+
+        return view;
     }
 
+    private void buildDistanceTables(Maze m) {
+        int numNodes = m.graph.length;
+
+        numJunctions = junctions.length;
+        junctionIds = new int[numNodes];
+        Arrays.fill(junctionIds, -1);
+
+        for (int i = 0; i < m.junctionIndices.length; i++) {
+            junctionIds[m.junctionIndices[i]] = i;
+        }
+
+        nearJunctions = new int[numNodes * 2];
+        nearDistances = new int[numNodes * 2];
+        nearReverseDistances = new int[numNodes * 2];
+        nearPaths = new int[numNodes * 2][];
+        nearFirstMoves = new byte[numNodes * 2];
+        nearLastMoves = new byte[numNodes * 2];
+        nearMovesBack = new byte[numNodes * 2];
+        Arrays.fill(nearJunctions, -1);
+
+        for (int i = 0; i < numNodes; i++) {
+            ArrayList<JunctionData> closestJunctions = nodes[i].closestJunctions;
+
+            for (int k = 0; k < Math.min(2, closestJunctions.size()); k++) {
+                JunctionData data = closestJunctions.get(k);
+                int slot = i * 2 + k;
+
+                nearJunctions[slot] = data.nodeID;
+                nearDistances[slot] = data.path.length;
+                nearPaths[slot] = data.path;
+                nearFirstMoves[slot] = (byte) data.firstMove.ordinal();
+                nearLastMoves[slot] = (byte) data.lastMove.ordinal();
+
+                if (data.reversePath.length > 0) {
+                    MOVE moveBack = game.getMoveToMakeToReachDirectNeighbour(data.nodeID, data.reversePath[0]);
+                    nearMovesBack[slot] = (byte) (moveBack == null ? -1 : moveBack.ordinal());
+
+                    for (int w = 0; w < data.reversePath.length; w++) {
+                        if (data.reversePath[w] == i) {
+                            nearReverseDistances[slot] = w + 1;
+                        }
+                    }
+                }
+            }
+        }
+
+        junctionDistances = new int[numJunctions * numJunctions * 4];
+        Arrays.fill(junctionDistances, -1);
+
+        for (int from = 0; from < numJunctions; from++) {
+            for (int to = 0; to < numJunctions; to++) {
+                for (Map.Entry<MOVE, int[]> entry : junctions[from].paths[to].entrySet()) {
+                    if (entry.getKey() != MOVE.NEUTRAL) {
+                        junctionDistances[(from * numJunctions + to) * 4 + entry.getKey().ordinal()] = entry.getValue().length;
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+     * The junctions are computed in parallel on the common fork-join pool: each one only fills its own paths and the
+     * A* searches are reentrant. This runs inside Game.getPathsCache(-), on a thread that holds the cache lock of the
+     * maze, so the workers must only read the maze: calling back into Game.getPathsCache(-) or getMaze(-) for the same
+     * maze could wait on the locks the building thread holds or is waiting for.
+     */
     private Junction[] junctionDistances(Game game) {
-        Maze m = game.getCurrentMaze();
-        int[] indices = m.junctionIndices;
+        final Maze m = game.getCurrentMaze();
+        final int[] indices = m.junctionIndices;
 
-        Junction[] junctions = new Junction[indices.length];
+        final Junction[] junctions = new Junction[indices.length];
 
-        for (int q = 0; q < indices.length; q++)// from
-        {
+        IntStream.range(0, indices.length).parallel().forEach(q -> {// from
             MOVE[] possibleMoves = m.graph[indices[q]].allPossibleMoves.get(MOVE.NEUTRAL);// all possible moves
 
             junctions[q] = new Junction(q, indices[q], indices.length);
@@ -195,14 +529,13 @@ public class PathsCache {
             for (int z = 0; z < indices.length; z++)// to (we need to include distance to itself)
             {
                 for (int i = 0; i < possibleMoves.length; i++) {
-                    int neighbour = game.getNeighbour(indices[q], possibleMoves[i]);
-                    int[] p = m.astar.computePathsAStar(neighbour, indices[z], possibleMoves[i], game);
-                    m.astar.resetGraph();
+                    int neighbour = m.neighbours[indices[q] * 4 + possibleMoves[i].ordinal()];
+                    int[] p = m.astar.computePathsAStar(neighbour, indices[z], possibleMoves[i], m);
 
                     junctions[q].addPath(z, possibleMoves[i], p);
                 }
             }
-        }
+        });
 
         return junctions;
     }
@@ -254,26 +587,6 @@ public class PathsCache {
 
         return allNodes;
     }
-
-    private int[] concat(int[]... arrays) {
-        int totalLength = 0;
-
-        for (int i = 0; i < arrays.length; i++) {
-            totalLength += arrays[i].length;
-        }
-
-        int[] fullArray = new int[totalLength];
-
-        int index = 0;
-
-        for (int i = 0; i < arrays.length; i++) {
-            for (int j = 0; j < arrays[i].length; j++) {
-                fullArray[index++] = arrays[i][j];
-            }
-        }
-
-        return fullArray;
-    }
 }
 
 class JunctionData {
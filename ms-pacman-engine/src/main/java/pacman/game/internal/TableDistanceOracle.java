@@ -0,0 +1,175 @@
+package pacman.game.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Scanner;
+
+import static pacman.game.Constants.pathDistances;
+
+/*
+ * The distances of the built-in mazes: the shortest distance from any node to any other node, pre-computed and
+ * loaded on first use. Since the graph is symmetric, the symmetries have been removed to preserve memory and all
+ * distances are stored in a 1D array of n(n+1)/2 entries.
+ */
+public final class TableDistanceOracle implements DistanceOracle {
+    //the most nodes a table can have: its bytes are indexed by an int
+    public static final int MAX_NODES = 46340;
+
+    private final Maze maze;
+    private final String distName;
+    //the binary file of the distances when they are not those of a built-in maze, or null
+    private final URL table;
+    //the shortest path distances, loaded on first use by loadDistances()
+    private volatile ShortBuffer shortestPathDistances;
+
+    public TableDistanceOracle(Maze maze, String distName) {
+        this.maze = maze;
+        this.distName = distName;
+        this.table = null;
+    }
+
+    /*
+     * The distances of any maze, read from a binary file such as those written by pacman.test.GenerateMazes.
+     */
+    public TableDistanceOracle(Maze maze, URL table) {
+        if (maze.graph.length > MAX_NODES) {
+            throw new IllegalArgumentException("Maze " + maze.name + " has too many nodes for a table: " + maze.graph.length);
+        }
+
+        this.maze = maze;
+        this.distName = null;
+        this.table = table;
+    }
+
+    @Override
+    public int getShortestPathDistance(int fromNodeIndex, int toNodeIndex) {
+        ShortBuffer distances = shortestPathDistances;
+
+        if (distances == null) {
+            distances = loadDistances();
+        }
+
+        if (fromNodeIndex == toNodeIndex) {
+            return 0;
+        } else if (fromNodeIndex < toNodeIndex) {
+            return distances.get(((toNodeIndex * (toNodeIndex + 1)) / 2) + fromNodeIndex);
+        } else {
+            return distances.get(((fromNodeIndex * (fromNodeIndex + 1)) / 2) + toNodeIndex);
+        }
+    }
+
+    /*
+     * The distances to the targets before the node are in the row of the node, next to each other; the others are
+     * in the rows of the targets.
+     */
+    @Override
+    public void getShortestPathDistances(int fromNodeIndex, int[] toNodeIndices, int count, int[] out, int offset) {
+        ShortBuffer distances = shortestPathDistances;
+
+        if (distances == null) {
+            distances = loadDistances();
+        }
+
+        int row = (fromNodeIndex * (fromNodeIndex + 1)) / 2;
+
+        for (int i = 0; i < count; i++) {
+            int to = toNodeIndices[i];
+
+            if (to < fromNodeIndex) {
+                out[offset + i] = distances.get(row + to);
+            } else if (to > fromNodeIndex) {
+                out[offset + i] = distances.get(((to * (to + 1)) / 2) + fromNodeIndex);
+            } else {
+                out[offset + i] = 0;
+            }
+        }
+    }
+
+    @Override
+    public void prepare() {
+        loadDistances();
+    }
+
+    /*
+     * The distances all fit in 16 bits (-1 for the nodes that cannot be reached) and are read from a binary file of
+     * little-endian shorts (see pacman.test.WriteDistanceTables), which is memory-mapped when it is a file and read
+     * into a direct buffer when it is inside a jar. The text file it was made from is only parsed if there is no
+     * binary file.
+     */
+    private synchronized ShortBuffer loadDistances() {
+        if (shortestPathDistances != null) {
+            return shortestPathDistances;
+        }
+
+        int size = ((maze.graph.length * (maze.graph.length - 1)) / 2) + maze.graph.length;
+        ShortBuffer distances;
+
+        try {
+            URL url = table != null ? table : getClass().getResource(pathDistances + "/" + distName + ".bin");
+            distances = url != null ? readDistances(url, size) : parseDistances(size);
+        } catch (IOException | URISyntaxException e) {
+            throw new IllegalStateException("Could not load the distances of maze " + maze.name, e);
+        }
+
+        shortestPathDistances = distances;
+        return distances;
+    }
+
+    private ShortBuffer readDistances(URL url, int size) throws IOException, URISyntaxException {
+        ByteBuffer bytes;
+
+        if ("file".equals(url.getProtocol())) {
+            try (FileChannel channel = FileChannel.open(Paths.get(url.toURI()), StandardOpenOption.READ)) {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        } else {
+            bytes = ByteBuffer.allocateDirect(size * 2);
+
+            try (InputStream in = url.openStream()) {
+                byte[] chunk = new byte[1 << 16];
+                int read;
+
+                while ((read = in.read(chunk)) != -1) {
+                    if (read > bytes.remaining()) {
+                        throw new IOException(url + " has more than " + size * 2 + " bytes");
+                    }
+                    bytes.put(chunk, 0, read);
+                }
+            }
+
+            bytes.flip();
+        }
+
+        if (bytes.limit() != size * 2) {
+            throw new IOException(url + " has " + bytes.limit() + " bytes, expected " + size * 2);
+        }
+
+        return bytes.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+    }
+
+    private ShortBuffer parseDistances(int size) {
+        short[] distances = new short[size];
+
+        Scanner scanner = new Scanner(getClass().getResourceAsStream(pathDistances + "/" + distName));
+        //        BufferedReader br = new BufferedReader(new InputStreamReader(ClassLoader.getSystemClassLoader().getResourceAsStream(pathDistances + System.getProperty("file.separator") + fileName)));
+        String input;
+        int index = 0;
+
+        while (scanner.hasNextLine()) {
+            input = scanner.nextLine();
+            distances[index++] = (short) Integer.parseInt(input);
+        }
+
+        scanner.close();
+
+        return ShortBuffer.wrap(distances);
+    }
+}
@@ -0,0 +1,132 @@
+package pacman.game.internal;
+
+import pacman.game.Constants.MOVE;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * The nodes that can be seen from every node of a maze under one type of partial observability and sight limit, as used
+ * by Game.isNodeObservable(-). A node is seen
+ *  - RADIUS: when its Manhattan distance is within the sight limit,
+ *  - LOS: when it also is on the same row or column and the shortest path to it is as long as the Manhattan distance
+ *    (the straight route is open),
+ *  - FF_LOS: as LOS, but only in the direction the observer last moved in,
+ *  - FULL: always.
+ * A row holds the nodes seen from one node (facing one way for FF_LOS) as bits in int words, followed by the same bits
+ * indexed by pill and by power pill, laid out as the pills in the state of the game so that the visible active pills are
+ * the AND of both. Rows are built on first use and published atomically, so the table can be shared by games on
+ * different threads.
+ */
+public final class VisibilityTable {
+    private static final int NUM_MOVES = MOVE.values().length;
+
+    private final Maze maze;
+    private final POType poType;
+    private final int sightLimit;
+    private final int pillsOffset, powerPillsOffset, rowLength;
+    private final AtomicReferenceArray<int[]> rows;
+
+    public VisibilityTable(Maze maze, POType poType, int sightLimit) {
+        this.maze = maze;
+        this.poType = poType;
+        this.sightLimit = sightLimit;
+        this.pillsOffset = words(maze.graph.length);
+        this.powerPillsOffset = pillsOffset + words(maze.pillIndices.length);
+        this.rowLength = powerPillsOffset + words(maze.powerPillIndices.length);
+        this.rows = new AtomicReferenceArray<int[]>(maze.graph.length * (poType == POType.FF_LOS ? NUM_MOVES : 1));
+    }
+
+    public Maze getMaze() {
+        return maze;
+    }
+
+    //where the pill bits start in a row
+    public int getPillsOffset() {
+        return pillsOffset;
+    }
+
+    //where the power pill bits start in a row
+    public int getPowerPillsOffset() {
+        return powerPillsOffset;
+    }
+
+    /*
+     * The nodes, pills and power pills seen from the node given by an observer that last moved as given (which only
+     * matters for FF_LOS). The row must not be modified.
+     */
+    public int[] getRow(int observerNodeIndex, int lastMove) {
+        int index = poType == POType.FF_LOS ? observerNodeIndex * NUM_MOVES + lastMove : observerNodeIndex;
+        int[] row = rows.get(index);
+
+        if (row == null) {
+            row = buildRow(observerNodeIndex, lastMove);
+            //another thread may have built the same row in the meantime; both are identical
+            rows.lazySet(index, row);
+        }
+
+        return row;
+    }
+
+    public boolean isVisible(int observerNodeIndex, int lastMove, int nodeIndex) {
+        return (getRow(observerNodeIndex, lastMove)[nodeIndex >>> 5] & (1 << nodeIndex)) != 0;
+    }
+
+    private int[] buildRow(int observerNodeIndex, int lastMove) {
+        int[] row = new int[rowLength];
+        Node observer = maze.graph[observerNodeIndex];
+
+        for (Node node : maze.graph) {
+            if (isVisible(observer, MOVE.values()[lastMove], node)) {
+                row[node.nodeIndex >>> 5] |= 1 << node.nodeIndex;
+
+                if (node.pillIndex >= 0) {
+                    row[pillsOffset + (node.pillIndex >>> 5)] |= 1 << node.pillIndex;
+                } else if (node.powerPillIndex >= 0) {
+                    row[powerPillsOffset + (node.powerPillIndex >>> 5)] |= 1 << node.powerPillIndex;
+                }
+            }
+        }
+
+        return row;
+    }
+
+    private boolean isVisible(Node observer, MOVE lastMove, Node node) {
+        int manhattan = Math.abs(observer.x - node.x) + Math.abs(observer.y - node.y);
+
+        switch (poType) {
+            case LOS:
+                return (observer.x == node.x || observer.y == node.y) && isRouteOpen(observer, node, manhattan);
+            case RADIUS:
+                return manhattan <= sightLimit;
+            case FF_LOS:
+                return isAhead(observer, lastMove, node) && isRouteOpen(observer, node, manhattan);
+            case FULL:
+                return true;
+        }
+        return false;
+    }
+
+    //whether the node is on the row or column the observer is facing, in front of it
+    private static boolean isAhead(Node observer, MOVE lastMove, Node node) {
+        switch (lastMove) {
+            case UP:
+                return observer.x == node.x && observer.y >= node.y;
+            case DOWN:
+                return observer.x == node.x && observer.y <= node.y;
+            case LEFT:
+                return observer.y == node.y && observer.x >= node.x;
+            case RIGHT:
+                return observer.y == node.y && observer.x <= node.x;
+            default:
+                return false;
+        }
+    }
+
+    private boolean isRouteOpen(Node observer, Node node, int manhattan) {
+        return manhattan <= sightLimit && maze.getShortestPathDistance(observer.nodeIndex, node.nodeIndex) == manhattan;
+    }
+
+    private static int words(int bits) {
+        return (bits + 31) >>> 5;
+    }
+}
@@ -0,0 +1,84 @@
+package pacman.test;
+
+import pacman.game.internal.BfsDistanceOracle;
+import pacman.game.internal.Maze;
+import pacman.game.internal.MazeGenerator;
+import pacman.game.internal.TableDistanceOracle;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Generates mazes of the sizes given and writes each one as a maze file along with its distance table, in the binary
+ * format of data/distances: one little-endian short per pair of nodes, -1 for the lair. The table of a maze can then
+ * be used instead of computing the distances while playing:
+ * <pre>
+ *     Maze maze = new Maze(new FileInputStream("g4000.txt"));
+ *     maze.setDistanceOracle(new TableDistanceOracle(maze, new File("g4000.bin").toURI().toURL()));
+ *     int index = Game.addMaze(maze);
+ * </pre>
+ * Arguments: the directory to write to, the spacing of the junctions, the seed and the numbers of nodes.
+ */
+public class GenerateMazes {
+
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args.length > 0 ? args[0] : "generated");
+        int spacing = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        int[] sizes = {1000, 4000, 16000};
+
+        if (args.length > 3) {
+            sizes = new int[args.length - 3];
+
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = Integer.parseInt(args[i + 3]);
+            }
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+
+        for (int size : sizes) {
+            long start = System.currentTimeMillis();
+            String name = "g" + size;
+            String nodes = MazeGenerator.ofSize(size, spacing).generate(name, seed);
+            File mazeFile = new File(directory, name + ".txt");
+
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(mazeFile), StandardCharsets.UTF_8)) {
+                out.write(nodes);
+            }
+
+            Maze maze = new Maze(new ByteArrayInputStream(nodes.getBytes(StandardCharsets.UTF_8)));
+
+            if (maze.graph.length > TableDistanceOracle.MAX_NODES) {
+                System.out.println(mazeFile + ": " + maze.graph.length + " nodes, too many for a distance table");
+                continue;
+            }
+
+            File tableFile = new File(directory, name + ".bin");
+            writeDistances(maze, tableFile);
+
+            System.out.println(mazeFile + ": " + maze.graph.length + " nodes, " + maze.junctionIndices.length + " junctions, "
+                    + maze.pillIndices.length + " pills, " + tableFile.length() + " bytes of distances ("
+                    + (System.currentTimeMillis() - start) + "ms)");
+        }
+    }
+
+    //the rows of the table in order: for every node, the distances from the nodes before it and itself
+    private static void writeDistances(Maze maze, File file) throws IOException {
+        //a single row is enough, as every query of a row has the same target
+        BfsDistanceOracle distances = new BfsDistanceOracle(maze, 1);
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            for (int to = 0; to < maze.graph.length; to++) {
+                for (int from = 0; from <= to; from++) {
+                    int distance = distances.getShortestPathDistance(from, to);
+
+                    out.write(distance & 0xFF);
+                    out.write((distance >> 8) & 0xFF);
+                }
+            }
+        }
+    }
+}
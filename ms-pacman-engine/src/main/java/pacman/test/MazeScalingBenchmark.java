@@ -0,0 +1,202 @@
+package pacman.test;
+
+import pacman.controllers.Controller;
+import pacman.controllers.examples.RandomGhosts;
+import pacman.controllers.examples.StarterGhosts;
+import pacman.controllers.examples.StarterPacMan;
+import pacman.entries.ghosts.AiGhosts;
+import pacman.entries.model2.MctsPacman;
+import pacman.game.Game;
+import pacman.game.GameSnapshot;
+import pacman.game.IntPathView;
+import pacman.game.internal.Maze;
+import pacman.game.internal.MazeGenerator;
+
+import java.util.EnumMap;
+import java.util.SplittableRandom;
+
+import static pacman.game.Constants.*;
+
+/**
+ * Measures how the parts of the game scale with the size of the maze, on generated mazes of the numbers of nodes given
+ * (by default from about the size of the built-in mazes to 16 times that). For every maze it prints the time taken to
+ * build the paths cache and the throughput of
+ * <ul>
+ * <li>advanceGame, with random moves,</li>
+ * <li>copy and snapshot/restore,</li>
+ * <li>the shortest path distance, the shortest path of a ghost and the next move towards a target (DM.PATH), between
+ * random pills,</li>
+ * <li>rollouts as played by the MCTS controllers: a restore followed by 20 ticks of StarterPacMan and RandomGhosts,</li>
+ * <li>the decisions of MctsPacman against StarterGhosts and of AiGhosts against StarterPacMan, over 200 ticks. Their
+ * searches stop after 30ms, so the time of a decision only grows once the rest of the move does not fit.</li>
+ * </ul>
+ * A size whose paths cache does not fit in the heap is printed as out of memory, and the next sizes are still tried.
+ * With a heap of about 1.5GB the largest default size runs out of memory; it takes a larger -Xmx to measure it.
+ * <p>
+ * Arguments: the spacing of the junctions, the milliseconds spent on each measurement and the numbers of nodes.
+ */
+public class MazeScalingBenchmark {
+    private static final int ROLLOUT_TICKS = 20;
+    private static final int DECISION_TICKS = 200;
+
+    private final long millis;
+
+    private MazeScalingBenchmark(long millis) {
+        this.millis = millis;
+    }
+
+    public static void main(String[] args) {
+        int spacing = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+        int[] sizes = {1300, 2600, 5200, 10400, 20800};
+
+        if (args.length > 2) {
+            sizes = new int[args.length - 2];
+
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = Integer.parseInt(args[i + 2]);
+            }
+        }
+
+        MazeScalingBenchmark benchmark = new MazeScalingBenchmark(millis);
+
+        System.out.printf("%7s %6s %9s %11s %9s %9s %10s %9s %9s %10s %12s %12s%n", "nodes", "jncts", "cache ms", "advance/s",
+                "copy/s", "restore/s", "distance/s", "path/s", "move/s", "rollout/s", "MctsPacMan", "AiGhosts");
+
+        for (int size : sizes) {
+            try {
+                Maze maze = MazeGenerator.ofSize(size, spacing).generateMaze("g" + size, 1);
+                benchmark.run(maze, Game.addMaze(maze));
+            } catch (OutOfMemoryError e) {
+                //the paths cache grows with the square of the junctions, so this is where the heap stops it scaling
+                System.out.printf("%7d %s%n", size, "out of memory (run with a larger -Xmx to measure this size)");
+            }
+        }
+    }
+
+    private void run(Maze maze, int mazeIndex) {
+        Game game = new Game(0, mazeIndex);
+        SplittableRandom random = new SplittableRandom(0);
+
+        long start = System.nanoTime();
+        game.getShortestPath(game.getPacmanCurrentNodeIndex(), game.getGhostInitialNodeIndex(), MOVE.LEFT);
+        long cacheMillis = (System.nanoTime() - start) / 1000000;
+
+        int[] pills = maze.pillIndices;
+        int[] from = new int[1024], to = new int[1024];
+
+        for (int i = 0; i < from.length; i++) {
+            from[i] = pills[random.nextInt(pills.length)];
+            to[i] = pills[random.nextInt(pills.length)];
+        }
+
+        RandomGhosts randomGhosts = new RandomGhosts();
+        Game advanced = game.copy();
+        double advance = rate(i -> {
+            if (advanced.gameOver()) {
+                advanced.restore(game.snapshot(new GameSnapshot()));
+            }
+
+            int node = advanced.getPacmanCurrentNodeIndex();
+            int moves = advanced.getPossibleMovesMask(node, advanced.getPacmanLastMoveMade());
+            int move = moves == 0 ? MOVE.NEUTRAL.ordinal() : nthMove(moves, random.nextInt(Integer.bitCount(moves)));
+
+            advanced.advanceGame(move, randomGhosts.getPackedMove(advanced));
+        });
+
+        double copy = rate(i -> advanced.copy());
+
+        GameSnapshot snapshot = new GameSnapshot();
+        Game scratch = advanced.copy();
+        double restore = rate(i -> scratch.restore(advanced.snapshot(snapshot)));
+
+        double distance = rate(i -> game.getShortestPathDistance(from[i & 1023], to[i & 1023]));
+
+        IntPathView view = new IntPathView();
+        double path = rate(i -> game.getShortestPath(from[i & 1023], to[i & 1023], MOVE.values()[i & 3], view));
+
+        double nextMove = rate(i -> game.getNextMoveTowardsTarget(from[i & 1023], to[i & 1023], DM.PATH));
+
+        StarterPacMan starterPacMan = new StarterPacMan();
+        game.snapshot(snapshot);
+        double rollout = rate(i -> {
+            scratch.restore(snapshot);
+            scratch.reseed(i);
+
+            for (int tick = 0; tick < ROLLOUT_TICKS && !scratch.gameOver(); tick++) {
+                scratch.advanceGame(starterPacMan.getMove(scratch, -1).ordinal(), randomGhosts.getPackedMove(scratch));
+            }
+        });
+
+        String mctsPacMan = decisions(mazeIndex, new MctsPacman(), new StarterGhosts(), true);
+        String aiGhosts = decisions(mazeIndex, new StarterPacMan(), new AiGhosts(), false);
+
+        System.out.printf("%7d %6d %9d %11.0f %9.0f %9.0f %10.0f %9.0f %9.0f %10.0f %12s %12s%n", maze.graph.length,
+                maze.junctionIndices.length, cacheMillis, advance, copy, restore, distance, path, nextMove, rollout,
+                mctsPacMan, aiGhosts);
+    }
+
+    /*
+     * Plays a game and times the decisions of one side: the mean and the longest, in milliseconds.
+     */
+    private static String decisions(int mazeIndex, Controller<MOVE> pacMan,
+                                    Controller<EnumMap<GHOST, MOVE>> ghosts, boolean timePacMan) {
+        Game game = new Game(0, mazeIndex);
+        long total = 0, longest = 0;
+        int count = 0;
+
+        for (int tick = 0; tick < DECISION_TICKS && !game.gameOver(); tick++) {
+            long start = System.nanoTime();
+            MOVE pacManMove = pacMan.getMove(game.copy(), -1);
+            long pacManTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            EnumMap<GHOST, MOVE> ghostMoves = ghosts.getMove(game.copy(), -1);
+            long ghostsTime = System.nanoTime() - start;
+
+            long time = timePacMan ? pacManTime : ghostsTime;
+            total += time;
+            longest = Math.max(longest, time);
+            count++;
+
+            game.advanceGame(pacManMove, ghostMoves);
+        }
+
+        return String.format("%.1f/%.0f", total / 1e6 / count, longest / 1e6);
+    }
+
+    private interface Operation {
+        void run(int i);
+    }
+
+    //operations per second, after warming up for a fifth of the time
+    private double rate(Operation operation) {
+        int i = 0;
+        long warmUpEnd = System.nanoTime() + millis * 200000;
+
+        while (System.nanoTime() < warmUpEnd) {
+            operation.run(i++);
+        }
+
+        long start = System.nanoTime();
+        long end = start + millis * 1000000;
+        long count = 0;
+
+        do {
+            for (int k = 0; k < 64; k++) {
+                operation.run(i++);
+            }
+            count += 64;
+        } while (System.nanoTime() < end);
+
+        return count * 1e9 / (System.nanoTime() - start);
+    }
+
+    private static int nthMove(int moves, int n) {
+        for (int k = 0; k < n; k++) {
+            moves &= moves - 1;
+        }
+
+        return Integer.numberOfTrailingZeros(moves);
+    }
+}
@@ -0,0 +1,39 @@
+package pacman.test;
+
+import java.io.*;
+import java.util.Scanner;
+
+import static pacman.game.Constants.distNames;
+
+/**
+ * Converts the text distance tables in the resources to the binary files read by Maze: one little-endian short per
+ * distance, in the same order as the text files.
+ */
+public class WriteDistanceTables {
+
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args.length > 0 ? args[0] : "src/main/resources/data/distances");
+
+        for (String distName : distNames) {
+            File file = new File(directory, distName + ".bin");
+            int count = 0;
+
+            try (Scanner scanner = new Scanner(new File(directory, distName));
+                 OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+                while (scanner.hasNextLine()) {
+                    int distance = Integer.parseInt(scanner.nextLine());
+
+                    if (distance < Short.MIN_VALUE || distance > Short.MAX_VALUE) {
+                        throw new IOException("Distance " + distance + " in " + distName + " does not fit in a short");
+                    }
+
+                    out.write(distance & 0xFF);
+                    out.write((distance >> 8) & 0xFF);
+                    count++;
+                }
+            }
+
+            System.out.println(file + ": " + count + " distances");
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package pacman.test;
+
+import pacman.game.internal.PathsCache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static pacman.game.Constants.NUM_MAZES;
+import static pacman.game.Constants.nodeNames;
+
+/**
+ * Computes the paths cache of every maze and writes it to the resources, so that later runs read it instead of
+ * computing it. Needs to be run again whenever a maze changes; a stale cache is detected and ignored.
+ */
+public class WritePathsCaches {
+
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args.length > 0 ? args[0] : "src/main/resources/data/paths");
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+
+        for (int i = 0; i < NUM_MAZES; i++) {
+            long start = System.currentTimeMillis();
+            PathsCache cache = new PathsCache(i);
+            File file = new File(directory, nodeNames[i] + ".bin");
+
+            try (OutputStream out = new FileOutputStream(file)) {
+                cache.write(out);
+            }
+
+            System.out.println("Maze " + i + ": " + file + " (" + file.length() + " bytes, " + (System.currentTimeMillis() - start) + "ms)");
+        }
+    }
+}